@@ -25,14 +25,64 @@ import java.util.Arrays;
 
 /**
  * A board provides access to the state of the current pile.
+ * <p>
+ * Alongside the shape of each block, the board keeps an occupancy bitboard with one word per row
+ * where bit <tt>col</tt> is set if the block in that column is non-empty. Collision tests, full
+ * row checks and row shifts operate on these words instead of on individual shapes.
+ * <p>
+ * The board also keeps the transposed bitboard with one word per column where bit <tt>row</tt> is
+ * set if the block in that row is non-empty. Each column's height, number of holes and number of
+ * blockades can be read from its word in constant time, and the words are kept up to date as
+ * blocks and rows are added and removed. Because of this, a board may be at most
+ * {@link Board#MAX_WIDTH} columns wide and {@link Board#MAX_HEIGHT} rows high.
+ * <p>
+ * Finally, the board keeps a 64-bit Zobrist hash of its occupancy: the exclusive-or of a fixed
+ * random key for each non-empty block. The hash is updated as blocks change and as rows shift, so
+ * it can be used as a cheap key for the state of the board. The keys are generated from a fixed
+ * seed and are the same in every run. Boards with the same occupancy have the same hash, even
+ * if the shapes of their blocks differ.
  *
  * @author Eric Fritz
  */
 public class Board
 {
+	/**
+	 * The maximum number of columns, bounded by the number of bits in a row mask.
+	 */
+	public static final int MAX_WIDTH = Long.SIZE;
+
+	/**
+	 * The maximum number of rows, bounded by the number of bits in a column mask.
+	 */
+	public static final int MAX_HEIGHT = Long.SIZE;
+
+	/**
+	 * The Zobrist key of each block, indexed by <tt>row * MAX_WIDTH + col</tt>.
+	 */
+	private static final long[] keys = new long[MAX_HEIGHT * MAX_WIDTH];
+
+	static {
+		// Keys are produced by the SplitMix64 generator so that they do not depend on the
+		// implementation of java.util.Random or on the time at which the class is loaded.
+
+		long state = 0x2545F4914F6CDD1DL;
+
+		for (int i = 0; i < keys.length; i++) {
+			long z = (state += 0x9E3779B97F4A7C15L);
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			keys[i] = z ^ (z >>> 31);
+		}
+	}
+
 	private int width;
 	private int height;
 	private Shape[] board;
+	private long[] rows;
+	private long[] columns;
+	private long fullRow;
+	private long topRow;
+	private long hash;
 
 	/**
 	 * Creates a new Board.
@@ -41,10 +91,22 @@ public class Board
 	 * @param height The board height.
 	 */
 	public Board(int width, int height) {
+		if (width > MAX_WIDTH) {
+			throw new IllegalArgumentException("Cannot create board wider than " + MAX_WIDTH + " columns.");
+		}
+
+		if (height > MAX_HEIGHT) {
+			throw new IllegalArgumentException("Cannot create board higher than " + MAX_HEIGHT + " rows.");
+		}
+
 		this.width = width;
 		this.height = height;
 
 		board = new Shape[width * height];
+		rows = new long[height];
+		columns = new long[width];
+		fullRow = width == MAX_WIDTH ? -1L : (1L << width) - 1;
+		topRow = 1L << (height - 1);
 		clear();
 	}
 
@@ -53,6 +115,9 @@ public class Board
 	 */
 	public void clear() {
 		Arrays.fill(board, Shape.NoShape);
+		Arrays.fill(rows, 0);
+		Arrays.fill(columns, 0);
+		hash = 0;
 	}
 
 	/**
@@ -69,6 +134,9 @@ public class Board
 		}
 
 		System.arraycopy(board, 0, fill.board, 0, board.length);
+		System.arraycopy(rows, 0, fill.rows, 0, rows.length);
+		System.arraycopy(columns, 0, fill.columns, 0, columns.length);
+		fill.hash = hash;
 
 		return fill;
 	}
@@ -87,6 +155,13 @@ public class Board
 		return height;
 	}
 
+	/**
+	 * @return The Zobrist hash of the occupancy of the board.
+	 */
+	public long getHash() {
+		return hash;
+	}
+
 	/**
 	 * Retrieves the block type at the given position.
 	 *
@@ -99,6 +174,154 @@ public class Board
 		return board[(row * width) + col];
 	}
 
+	/**
+	 * Determines if the block at the given position is non-empty.
+	 *
+	 * @param row The row index.
+	 * @param col The column index.
+	 *
+	 * @return <tt>true</tt> if the block is occupied, <tt>false</tt> otherwise.
+	 */
+	public boolean isOccupied(int row, int col) {
+		return (rows[row] & (1L << col)) != 0;
+	}
+
+	/**
+	 * Retrieves the occupancy mask of a row. Bit <tt>col</tt> of the mask is set if the block in
+	 * that column is non-empty.
+	 *
+	 * @param row The row index.
+	 *
+	 * @return The row mask.
+	 */
+	public long getRowMask(int row) {
+		return rows[row];
+	}
+
+	/**
+	 * Retrieves the occupancy mask of a column. Bit <tt>row</tt> of the mask is set if the block in
+	 * that row is non-empty.
+	 *
+	 * @param col The column index.
+	 *
+	 * @return The column mask.
+	 */
+	public long getColumnMask(int col) {
+		return columns[col];
+	}
+
+	/**
+	 * Retrieves the occupancy mask a column would have if the given rows were removed from the
+	 * board, as if by calling {@link Board#removeRow(int)} on each row from the highest to the
+	 * lowest. The board itself is not modified.
+	 *
+	 * @param col     The column index.
+	 * @param removed A mask where bit <tt>row</tt> is set for each row to remove.
+	 *
+	 * @return The column mask.
+	 */
+	public long getColumnMask(int col, long removed) {
+		long column = columns[col];
+
+		while (removed != 0) {
+			int row = Long.SIZE - 1 - Long.numberOfLeadingZeros(removed);
+			removed &= ~(1L << row);
+
+			column = collapse(column, row);
+		}
+
+		return column;
+	}
+
+	/**
+	 * Retrieves a mask where bit <tt>row</tt> is set if the row is filled horizontally.
+	 *
+	 * @return The mask of full rows.
+	 */
+	public long getFullRows() {
+		long full = topRow | (topRow - 1);
+
+		for (int col = 0; col < width && full != 0; col++) {
+			full &= columns[col];
+		}
+
+		return full;
+	}
+
+	/**
+	 * Determines the height of a column, which is one more than the row index of the highest
+	 * non-empty block in that column.
+	 *
+	 * @param col The column index.
+	 *
+	 * @return The column height.
+	 */
+	public int getColumnHeight(int col) {
+		return heightOf(columns[col]);
+	}
+
+	/**
+	 * Determines the number of empty blocks which lie below the highest non-empty block of a column.
+	 *
+	 * @param col The column index.
+	 *
+	 * @return The number of holes.
+	 */
+	public int getColumnHoles(int col) {
+		return holesOf(columns[col]);
+	}
+
+	/**
+	 * Determines the number of non-empty blocks which lie above the lowest hole of a column.
+	 *
+	 * @param col The column index.
+	 *
+	 * @return The number of blockades.
+	 */
+	public int getColumnBlockades(int col) {
+		return blockadesOf(columns[col]);
+	}
+
+	/**
+	 * Determines the height of a column mask.
+	 *
+	 * @param column The column mask.
+	 *
+	 * @return The column height.
+	 * @see Board#getColumnHeight(int)
+	 */
+	public static int heightOf(long column) {
+		return Long.SIZE - Long.numberOfLeadingZeros(column);
+	}
+
+	/**
+	 * Determines the number of holes in a column mask.
+	 *
+	 * @param column The column mask.
+	 *
+	 * @return The number of holes.
+	 * @see Board#getColumnHoles(int)
+	 */
+	public static int holesOf(long column) {
+		return heightOf(column) - Long.bitCount(column);
+	}
+
+	/**
+	 * Determines the number of blockades in a column mask.
+	 *
+	 * @param column The column mask.
+	 *
+	 * @return The number of blockades.
+	 * @see Board#getColumnBlockades(int)
+	 */
+	public static int blockadesOf(long column) {
+		if (holesOf(column) == 0) {
+			return 0;
+		}
+
+		return Long.bitCount(column >>> Long.numberOfTrailingZeros(~column));
+	}
+
 	/**
 	 * Determines if a tetromino can be placed at the given x and y-coordinates without collision.
 	 *
@@ -117,7 +340,7 @@ public class Board
 				return false;
 			}
 
-			if (y < height && getShapeAt(y, x) != Shape.NoShape) {
+			if (y < height && (rows[y] & (1L << x)) != 0) {
 				return false;
 			}
 		}
@@ -155,13 +378,7 @@ public class Board
 	 * @return Whether the row is full.
 	 */
 	public boolean isRowFull(int row) {
-		for (int col = 0; col < width; col++) {
-			if (getShapeAt(row, col) == Shape.NoShape) {
-				return false;
-			}
-		}
-
-		return true;
+		return rows[row] == fullRow;
 	}
 
 	/**
@@ -193,12 +410,18 @@ public class Board
 			throw new IllegalArgumentException("Cannot add row to board with non-matching dimensions.");
 		}
 
-		for (int i = height - 1; i > row; i--) {
-			for (int col = 0; col < width; col++) {
-				setShapeAt(i, col, getShapeAt(i - 1, col));
-			}
+		hash ^= hashRows(row);
+
+		System.arraycopy(board, row * width, board, (row + 1) * width, (height - row - 1) * width);
+		System.arraycopy(rows, row, rows, row + 1, height - row - 1);
+
+		for (int col = 0; col < width; col++) {
+			columns[col] = expand(columns[col], row);
 		}
 
+		rows[row] = 0;
+		hash ^= hashRows(row);
+
 		for (int col = 0; col < width; col++) {
 			setShapeAt(row, col, shapes[col]);
 		}
@@ -210,13 +433,141 @@ public class Board
 	 * @param row The row index.
 	 */
 	public void removeRow(int row) {
-		for (int i = row; i < height - 1; i++) {
+		if (row < height - 1) {
+			hash ^= hashRows(row);
+
+			System.arraycopy(board, (row + 1) * width, board, row * width, (height - row - 1) * width);
+			System.arraycopy(rows, row + 1, rows, row, height - row - 1);
+
+			for (int col = 0; col < width; col++) {
+				columns[col] = collapse(columns[col], row);
+			}
+
+			hash ^= hashRows(row);
+		}
+	}
+
+	/**
+	 * Retrieve the shapes that compose each of the given rows.
+	 *
+	 * @param rows A mask where bit <tt>row</tt> is set for each row to retrieve.
+	 *
+	 * @return An array of rows, ordered from the lowest row index to the highest.
+	 */
+	public Shape[][] getRows(long rows) {
+		Shape[][] shapes = new Shape[Long.bitCount(rows)][];
+
+		int i = 0;
+		for (long r = rows; r != 0; r &= r - 1) {
+			shapes[i++] = getRow(Long.numberOfTrailingZeros(r));
+		}
+
+		return shapes;
+	}
+
+	/**
+	 * Inserts several rows into the board in a single pass. The result is the same as calling
+	 * {@link Board#addRow(int, Shape[])} for each row from the lowest row index to the highest, so
+	 * this method restores the rows removed by {@link Board#removeRows(long)}.
+	 *
+	 * @param rows   A mask where bit <tt>row</tt> is set for each row index to insert.
+	 * @param shapes The rows to add, ordered from the lowest row index to the highest.
+	 */
+	public void addRows(long rows, Shape[][] shapes) {
+		if (shapes.length != Long.bitCount(rows) || (rows & ~(topRow | (topRow - 1))) != 0) {
+			throw new IllegalArgumentException("Cannot add rows with non-matching row mask.");
+		}
+
+		for (Shape[] row : shapes) {
+			if (row.length != width) {
+				throw new IllegalArgumentException("Cannot add row to board with non-matching dimensions.");
+			}
+		}
+
+		if (rows == 0) {
+			return;
+		}
+
+		int lowest = Long.numberOfTrailingZeros(rows);
+		hash ^= hashRows(lowest);
+
+		int src = height - 1 - shapes.length;
+		int next = shapes.length - 1;
+
+		for (int dst = height - 1; dst >= lowest; dst--) {
+			if ((rows & (1L << dst)) != 0) {
+				System.arraycopy(shapes[next--], 0, board, dst * width, width);
+			} else {
+				System.arraycopy(board, src * width, board, dst * width, width);
+				this.rows[dst] = this.rows[src--];
+			}
+		}
+
+		for (int col = 0; col < width; col++) {
+			long column = columns[col];
+
+			for (long r = rows; r != 0; r &= r - 1) {
+				column = expand(column, Long.numberOfTrailingZeros(r));
+			}
+
+			columns[col] = column;
+		}
+
+		for (long r = rows; r != 0; r &= r - 1) {
+			this.rows[Long.numberOfTrailingZeros(r)] = 0;
+		}
+
+		hash ^= hashRows(lowest);
+
+		for (long r = rows; r != 0; r &= r - 1) {
+			int row = Long.numberOfTrailingZeros(r);
+
 			for (int col = 0; col < width; col++) {
-				setShapeAt(i, col, getShapeAt(i + 1, col));
+				setShapeAt(row, col, getShapeAt(row, col));
 			}
 		}
 	}
 
+	/**
+	 * Removes several rows from the board in a single pass. The rows that remain are compacted
+	 * downwards, and the result is the same as calling {@link Board#removeRow(int)} for each row
+	 * from the highest row index to the lowest.
+	 *
+	 * @param rows A mask where bit <tt>row</tt> is set for each row to remove.
+	 */
+	public void removeRows(long rows) {
+		rows &= topRow | (topRow - 1);
+
+		if (rows == 0) {
+			return;
+		}
+
+		int dst = Long.numberOfTrailingZeros(rows);
+		int lowest = dst;
+		hash ^= hashRows(lowest);
+
+		for (int src = dst; src < height; src++) {
+			if ((rows & (1L << src)) == 0) {
+				System.arraycopy(board, src * width, board, dst * width, width);
+				this.rows[dst++] = this.rows[src];
+			}
+		}
+
+		// Like removeRow, the highest row keeps its blocks. Each row vacated by the compaction
+		// is filled with a copy of it.
+
+		for (; dst < height - 1; dst++) {
+			System.arraycopy(board, (height - 1) * width, board, dst * width, width);
+			this.rows[dst] = this.rows[height - 1];
+		}
+
+		for (int col = 0; col < width; col++) {
+			columns[col] = getColumnMask(col, rows);
+		}
+
+		hash ^= hashRows(lowest);
+	}
+
 	/**
 	 * Determines the x-position of a piece as if it were spawning at the top of the board. This
 	 * attempts to center the piece horizontally on the board.
@@ -257,6 +608,10 @@ public class Board
 	/**
 	 * Determines the column index where the given piece would come to rest if dropped straight
 	 * down.
+	 * <p>
+	 * If every block of the piece starts above the top of its column, the resting position is
+	 * found from the column heights and the bottom profile of the piece. Otherwise (for instance
+	 * when the piece is tucked under an overhang), the piece is moved down one row at a time.
 	 *
 	 * @param piece The tetromino.
 	 * @param xPos  The x-position.
@@ -265,6 +620,20 @@ public class Board
 	 * @return The resting y-position.
 	 */
 	public int dropHeight(Tetromino piece, int xPos, int yPos) {
+		int left = xPos + piece.getMinX();
+
+		if (left >= 0 && left + piece.getWidth() <= width) {
+			int rest = Integer.MIN_VALUE;
+
+			for (int i = 0; i < piece.getWidth(); i++) {
+				rest = Math.max(rest, heightOf(columns[left + i]) + piece.getBottom(i));
+			}
+
+			if (rest <= yPos) {
+				return rest;
+			}
+		}
+
 		int diff = 0;
 		while (canMove(piece, xPos, yPos - diff)) {
 			diff++;
@@ -295,6 +664,73 @@ public class Board
 	 */
 	private void setShapeAt(int row, int col, Shape type) {
 		board[(row * width) + col] = type;
+
+		if (((rows[row] & (1L << col)) != 0) != (type != Shape.NoShape)) {
+			hash ^= keys[row * MAX_WIDTH + col];
+		}
+
+		if (type == Shape.NoShape) {
+			rows[row] &= ~(1L << col);
+			columns[col] &= ~(1L << row);
+		} else {
+			rows[row] |= 1L << col;
+			columns[col] |= 1L << row;
+		}
+	}
+
+	/**
+	 * Computes the combined Zobrist keys of the non-empty blocks in every row at or above the given
+	 * row. Applying the result to the hash before and after shifting those rows moves their blocks
+	 * to their new positions.
+	 *
+	 * @param from The lowest row index.
+	 *
+	 * @return The combined keys.
+	 */
+	private long hashRows(int from) {
+		long result = 0;
+
+		for (int row = from; row < height; row++) {
+			for (long mask = rows[row]; mask != 0; mask &= mask - 1) {
+				result ^= keys[row * MAX_WIDTH + Long.numberOfTrailingZeros(mask)];
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Removes a row from a column mask by shifting the bits above it down by one. The highest row
+	 * keeps its blocks, mirroring {@link Board#removeRow(int)}.
+	 *
+	 * @param column The column mask.
+	 * @param row    The row index.
+	 *
+	 * @return The collapsed column mask.
+	 */
+	private long collapse(long column, int row) {
+		if (row >= height - 1) {
+			return column;
+		}
+
+		long below = (1L << row) - 1;
+		return (column & below) | ((column >>> 1) & ~below) | (column & topRow);
+	}
+
+	/**
+	 * Inserts an empty row into a column mask by shifting the bits at and above it up by one. The
+	 * bit of the highest row is pushed off of the board, mirroring {@link Board#addRow(int, Shape[])}.
+	 *
+	 * @param column The column mask.
+	 * @param row    The row index.
+	 *
+	 * @return The expanded column mask.
+	 */
+	private long expand(long column, int row) {
+		long below = (1L << row) - 1;
+		long above = -2L << row;
+
+		return (column & below) | ((column << 1) & above & (topRow | (topRow - 1)));
 	}
 
 	/**
@@ -315,4 +751,24 @@ public class Board
 			}
 		}
 	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(hash);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+
+		if (obj == null || this.getClass() != obj.getClass()) {
+			return false;
+		}
+
+		Board other = (Board) obj;
+
+		return this.width == other.width && this.height == other.height && this.hash == other.hash && Arrays.equals(this.board, other.board);
+	}
 }
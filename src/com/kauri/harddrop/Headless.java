@@ -0,0 +1,261 @@
+/*
+ * This file is part of the tetris package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauri.harddrop;
+
+import com.kauri.harddrop.ai.Coordinator;
+import com.kauri.harddrop.ai.Evolution;
+import com.kauri.harddrop.ai.Evolution.Fitness;
+import com.kauri.harddrop.ai.IslandModel;
+import com.kauri.harddrop.ai.MoveEvaluator;
+import com.kauri.harddrop.ai.ParallelMoveEvaluator;
+import com.kauri.harddrop.ai.ScoringSystem;
+import com.kauri.harddrop.ai.Simulation;
+import com.kauri.harddrop.ai.TranspositionTable;
+import com.kauri.harddrop.ai.TranspositionTable.Replacement;
+import com.kauri.harddrop.ai.Worker;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.LongStream;
+
+/**
+ * Plays games with the AI from the command line, without opening a window. The weights come from
+ * the population of the genetic algorithm, as they do in {@link Tetris}, and the games may be used
+ * to train it.
+ * <p>
+ * Usage: <tt>Headless [-games n] [-width n] [-pieces n] [-prune] [-train] [-generations n]
+ * [-seeds n] [-fitness mean|median|min] [-race n] [-nomemo] [-population n] [-genes n] [-elite f]
+ * [-mutation f] [-islands n] [-interval n] [-migrants n] [-coordinator port] [-worker host:port]</tt>
+ * <p>
+ * With <tt>-generations</tt>, the given number of generations are trained by playing all of the
+ * candidates of each generation in parallel, one game per processor at a time. With
+ * <tt>-seeds</tt>, every candidate plays the same number of fixed piece sequences. With
+ * <tt>-race</tt>, the candidates race from the given number of pieces up to <tt>-pieces</tt>.
+ * Unless <tt>-nomemo</tt> is given, games already played by a surviving candidate are not replayed.
+ * With <tt>-islands</tt>, each island evolves its own population and plays its games on a single
+ * processor, sending its best candidates to the next island every <tt>-interval</tt> generations.
+ * With <tt>-coordinator</tt>, the games are instead played by the workers which connect to the
+ * given port, each of which is started with <tt>-worker</tt> and plays one game per processor.
+ *
+ * @author Eric Fritz
+ */
+public class Headless
+{
+	public static void main(String[] args) throws IOException {
+		int games = 10;
+		int width = 10;
+		long pieces = 0;
+		boolean prune = false;
+		boolean train = false;
+		int generations = 0;
+		int seeds = 0;
+		Fitness fitness = Fitness.MEAN;
+		long race = 0;
+		boolean memo = true;
+		int population = 16;
+		int genes = ScoringSystem.FEATURES;
+		double elite = 1 / 4.0;
+		double mutation = 1 / 10.0;
+		int islands = 1;
+		int interval = 5;
+		int migrants = 1;
+		int coordinator = 0;
+		String worker = null;
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-games":
+					games = Integer.parseInt(args[++i]);
+					break;
+
+				case "-width":
+					width = Integer.parseInt(args[++i]);
+					break;
+
+				case "-pieces":
+					pieces = Long.parseLong(args[++i]);
+					break;
+
+				case "-prune":
+					prune = true;
+					break;
+
+				case "-train":
+					train = true;
+					break;
+
+				case "-generations":
+					generations = Integer.parseInt(args[++i]);
+					break;
+
+				case "-seeds":
+					seeds = Integer.parseInt(args[++i]);
+					break;
+
+				case "-fitness":
+					fitness = Fitness.valueOf(args[++i].toUpperCase());
+					break;
+
+				case "-race":
+					race = Long.parseLong(args[++i]);
+					break;
+
+				case "-nomemo":
+					memo = false;
+					break;
+
+				case "-population":
+					population = Integer.parseInt(args[++i]);
+					break;
+
+				case "-genes":
+					genes = Integer.parseInt(args[++i]);
+					break;
+
+				case "-elite":
+					elite = Double.parseDouble(args[++i]);
+					break;
+
+				case "-mutation":
+					mutation = Double.parseDouble(args[++i]);
+					break;
+
+				case "-islands":
+					islands = Integer.parseInt(args[++i]);
+					break;
+
+				case "-interval":
+					interval = Integer.parseInt(args[++i]);
+					break;
+
+				case "-migrants":
+					migrants = Integer.parseInt(args[++i]);
+					break;
+
+				case "-coordinator":
+					coordinator = Integer.parseInt(args[++i]);
+					break;
+
+				case "-worker":
+					worker = args[++i];
+					break;
+
+				default:
+					System.err.println("usage: Headless [-games n] [-width n] [-pieces n] [-prune] [-train] [-generations n] [-seeds n] [-fitness mean|median|min] [-race n] [-nomemo] [-population n] [-genes n] [-elite f] [-mutation f] [-islands n] [-interval n] [-migrants n] [-coordinator port] [-worker host:port]");
+					System.exit(1);
+			}
+		}
+
+		if (worker != null) {
+			String[] address = worker.split(":");
+			new Worker(address[0], Integer.parseInt(address[1]), Runtime.getRuntime().availableProcessors()).run();
+			return;
+		}
+
+		if (coordinator > 0 && (islands > 1 || race > 0)) {
+			System.err.println("-coordinator cannot be combined with -islands or -race");
+			System.exit(1);
+		}
+
+		if (generations > 0) {
+			IslandModel model = null;
+			Evolution[] evolutions;
+
+			if (islands > 1) {
+				model = new IslandModel(islands, population, genes);
+				model.setInterval(interval);
+				model.setMigrants(migrants);
+				evolutions = model.getIslands();
+			} else {
+				evolutions = new Evolution[] {new Evolution(new ScoringSystem(), population, genes, "aiscores.txt")};
+			}
+
+			for (Evolution evo : evolutions) {
+				evo.setSeeds(LongStream.range(0, seeds).toArray());
+				evo.setFitness(fitness);
+				evo.setMemoizing(memo);
+				evo.setElitePercent(elite);
+				evo.setMutationRate(mutation);
+			}
+
+			if (coordinator > 0) {
+				try (Coordinator runner = new Coordinator(coordinator)) {
+					System.out.printf("Waiting for workers on port %d.\n", runner.getPort());
+					train(evolutions[0], null, runner, generations, width, pieces, race);
+				}
+			} else {
+				train(evolutions[0], model, null, generations, width, pieces, race);
+			}
+
+			return;
+		}
+
+		ScoringSystem scoring = new ScoringSystem();
+		MoveEvaluator evaluator = prune ? new MoveEvaluator(scoring) : new ParallelMoveEvaluator(scoring);
+		evaluator.setTranspositionTable(new TranspositionTable(1 << 18, Replacement.DEPTH_PREFERRED));
+		evaluator.setPruning(prune);
+
+		Evolution evo = new Evolution(scoring);
+
+		GameContext context = new GameContext();
+		context.setBoard(new Board(width, width * 2));
+		context.registerNewGameListener(evo::updateScoring);
+
+		Simulation simulation = new Simulation(context, evaluator);
+		simulation.setMaxPieces(pieces);
+
+		for (int i = 0; i < games; i++) {
+			long lines = simulation.play();
+
+			if (train) {
+				evo.submit(lines);
+			}
+		}
+
+		System.out.println(simulation);
+	}
+
+	private static void train(Evolution evo, IslandModel model, Coordinator coordinator, int generations, int width, long pieces, long race) {
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+		long start = System.nanoTime();
+
+		if (model != null) {
+			model.play(executor, generations, width, race, pieces);
+			model.save("aiscores.txt");
+		} else {
+			for (int i = 0; i < generations; i++) {
+				if (coordinator != null) {
+					evo.playGeneration(coordinator, width, pieces);
+				} else if (race > 0) {
+					evo.raceGeneration(executor, width, race, pieces);
+				} else {
+					evo.playGeneration(executor, width, pieces);
+				}
+			}
+		}
+
+		executor.shutdown();
+
+		System.out.printf("generations = %d, generations/sec = %.2f\n", generations, generations / ((System.nanoTime() - start) / 1e9));
+	}
+}
@@ -23,9 +23,15 @@ package com.kauri.harddrop;
 
 import com.kauri.harddrop.GameContext.State;
 import com.kauri.harddrop.ai.AI;
+import com.kauri.harddrop.ai.AnytimeEvaluator;
+import com.kauri.harddrop.ai.BeamSearchEvaluator;
 import com.kauri.harddrop.ai.Evolution;
+import com.kauri.harddrop.ai.ExpectimaxEvaluator;
 import com.kauri.harddrop.ai.MoveEvaluator;
+import com.kauri.harddrop.ai.ParallelMoveEvaluator;
 import com.kauri.harddrop.ai.ScoringSystem;
+import com.kauri.harddrop.ai.TranspositionTable;
+import com.kauri.harddrop.ai.TranspositionTable.Replacement;
 import com.kauri.harddrop.sequence.LinePieceSelector;
 import com.kauri.harddrop.sequence.PieceSelector;
 import com.kauri.harddrop.sequence.PieceSequence;
@@ -65,7 +71,7 @@ public class Tetris extends Canvas implements Runnable
 
 	private JFrame frame;
 	private ScoringSystem scoring = new ScoringSystem();
-	private MoveEvaluator evaluator = new MoveEvaluator(scoring);
+	private MoveEvaluator evaluator = new ParallelMoveEvaluator(scoring);
 	private Evolution evo = new Evolution(scoring);
 
 	private UI ui = new UI(context);
@@ -73,6 +79,8 @@ public class Tetris extends Canvas implements Runnable
 	private PlayerController player = new PlayerController(context);
 
 	public Tetris() {
+		evaluator.setTranspositionTable(new TranspositionTable(1 << 18, Replacement.DEPTH_PREFERRED));
+
 		this.addKeyListener(player);
 		this.addComponentListener(ui);
 	}
@@ -235,6 +243,7 @@ public class Tetris extends Canvas implements Runnable
 	private JMenu buildAiMenu() {
 		JMenuItem aiEnabledItem;
 		JMenuItem evolveItem;
+		JMenuItem ponderItem;
 
 		aiEnabledItem = new JCheckBoxMenuItem();
 		aiEnabledItem.setText("Enabled");
@@ -245,10 +254,16 @@ public class Tetris extends Canvas implements Runnable
 		evolveItem.setText("Train/Evolve");
 		evolveItem.addActionListener((e) -> ai.setTraining(((JMenuItem) e.getSource()).isSelected()));
 
+		ponderItem = new JCheckBoxMenuItem();
+		ponderItem.setText("Ponder");
+		ponderItem.addActionListener((e) -> ai.setPondering(((JMenuItem) e.getSource()).isSelected()));
+
 		JMenu menu = new JMenu("AI");
 		menu.add(aiEnabledItem);
 		menu.add(evolveItem);
+		menu.add(ponderItem);
 		menu.add(buildSpeedMenu());
+		menu.add(buildSearchMenu());
 
 		return menu;
 	}
@@ -272,7 +287,8 @@ public class Tetris extends Canvas implements Runnable
 		selectors.put("Shuffle", new ShufflePieceSelector());
 		selectors.put("Line", new LinePieceSelector());
 		selectors.put("SZ", new SZPieceSelector());
-		selectors.put("Worst", new WorstPieceSelector(context, evaluator));
+		// The selector runs on the game thread while the AI may be pondering with its own evaluator.
+		selectors.put("Worst", new WorstPieceSelector(context, new MoveEvaluator(scoring)));
 
 		for (Map.Entry<String, PieceSelector> entry : selectors.entrySet()) {
 			createSelectorItem(menu, group, entry.getValue(), entry.getKey());
@@ -292,6 +308,50 @@ public class Tetris extends Canvas implements Runnable
 		return speedMenu;
 	}
 
+	private JMenu buildSearchMenu() {
+		JMenu menu = new JMenu("Search");
+		ButtonGroup group = new ButtonGroup();
+
+		createSearchItem(menu, group, evaluator, "Two-Ply");
+		createSearchItem(menu, group, createPrunedEvaluator(), "Two-Ply (Pruned)");
+		createSearchItem(menu, group, createBeamSearchEvaluator(4, 16), "Beam (4 Pieces)");
+		createSearchItem(menu, group, createBeamSearchEvaluator(6, 32), "Beam (6 Pieces)");
+		createSearchItem(menu, group, createExpectimaxEvaluator(8), "Expectimax");
+		createSearchItem(menu, group, createAnytimeEvaluator(50), "Anytime (50 ms)");
+		createSearchItem(menu, group, createAnytimeEvaluator(250), "Anytime (250 ms)");
+
+		return menu;
+	}
+
+	private MoveEvaluator createPrunedEvaluator() {
+		MoveEvaluator pruned = new MoveEvaluator(scoring);
+		pruned.setTranspositionTable(evaluator.getTranspositionTable());
+		pruned.setPruning(true);
+
+		return pruned;
+	}
+
+	private MoveEvaluator createBeamSearchEvaluator(int depth, int beamWidth) {
+		MoveEvaluator beam = new BeamSearchEvaluator(scoring, context, depth, beamWidth);
+		beam.setTranspositionTable(evaluator.getTranspositionTable());
+
+		return beam;
+	}
+
+	private MoveEvaluator createExpectimaxEvaluator(int expansionWidth) {
+		MoveEvaluator expectimax = new ExpectimaxEvaluator(scoring, context, expansionWidth);
+		expectimax.setTranspositionTable(evaluator.getTranspositionTable());
+
+		return expectimax;
+	}
+
+	private MoveEvaluator createAnytimeEvaluator(long budget) {
+		MoveEvaluator anytime = new AnytimeEvaluator(scoring, context, 8, 32, budget);
+		anytime.setTranspositionTable(evaluator.getTranspositionTable());
+
+		return anytime;
+	}
+
 	private void createBoardSizeItem(JMenu menu, ButtonGroup group, final int width) {
 		JMenuItem item = new JRadioButtonMenuItem();
 		item.addActionListener((e) -> {
@@ -321,6 +381,19 @@ public class Tetris extends Canvas implements Runnable
 		item.setText(label);
 	}
 
+	private void createSearchItem(JMenu menu, ButtonGroup group, final MoveEvaluator searchEvaluator, final String label) {
+		JMenuItem item = new JRadioButtonMenuItem();
+		item.addActionListener((e) -> ai.setEvaluator(searchEvaluator));
+
+		if (searchEvaluator == evaluator) {
+			item.setSelected(true);
+		}
+
+		menu.add(item);
+		group.add(item);
+		item.setText(label);
+	}
+
 	private void createSpeedItem(JMenu menu, ButtonGroup group, final int delay) {
 		JMenuItem item = new JRadioButtonMenuItem();
 		item.addActionListener((e) -> ai.setDelay(delay));
@@ -23,9 +23,7 @@ package com.kauri.harddrop;
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.List;
+import java.util.EnumMap;
 import java.util.Map;
 
 /**
@@ -33,52 +31,154 @@ import java.util.Map;
  * <p>
  * A tetromino is immutable and privately created. To reference a new tetromino, use the map of
  * pre-constructed one-sided {@link Tetromino#tetrominoes tetrominoes}.
+ * <p>
+ * Every rotation of every shape is constructed once when this class is initialized. The offsets
+ * and bounds of each rotation are stored in flat arrays and fields, and rotating a tetromino only
+ * follows a reference to another pre-constructed instance. Tetrominoes can therefore be shared
+ * freely between threads.
  *
  * @author Eric Fritz
  */
 public class Tetromino
 {
+	/**
+	 * The number of distinct clockwise rotations of a tetromino.
+	 */
+	public static final int ROTATIONS = 4;
+
 	/**
 	 * A map of all seven pre-constructed one-sided tetrominoes.
 	 */
-	public static Map<Shape, Tetromino> tetrominoes = new HashMap<>();
+	public static Map<Shape, Tetromino> tetrominoes;
+
+	/**
+	 * A table of each rotation of each shape, indexed by the shape ordinal and rotation index.
+	 */
+	private static Tetromino[][] rotations = new Tetromino[Shape.values().length][];
 
 	static {
-		tetrominoes.put(Shape.I, new Tetromino(Shape.I, new Point(-2, +0), new Point(-1, +0), new Point(+0, +0), new Point(+1, +0)));
-		tetrominoes.put(Shape.J, new Tetromino(Shape.J, new Point(+1, +1), new Point(+1, +0), new Point(+0, +0), new Point(-1, +0)));
-		tetrominoes.put(Shape.L, new Tetromino(Shape.L, new Point(-1, +1), new Point(-1, +0), new Point(+0, +0), new Point(+1, +0)));
-		tetrominoes.put(Shape.O, new Tetromino(Shape.O, new Point(+0, +0), new Point(+1, +0), new Point(+0, +1), new Point(+1, +1)));
-		tetrominoes.put(Shape.S, new Tetromino(Shape.S, new Point(+1, +0), new Point(+0, +0), new Point(+0, +1), new Point(-1, +1)));
-		tetrominoes.put(Shape.T, new Tetromino(Shape.T, new Point(-1, +0), new Point(+0, +0), new Point(+1, +0), new Point(+0, +1)));
-		tetrominoes.put(Shape.Z, new Tetromino(Shape.Z, new Point(+0, +0), new Point(-1, +0), new Point(+1, +1), new Point(+0, +1)));
+		Map<Shape, Tetromino> map = new EnumMap<>(Shape.class);
+
+		map.put(Shape.I, createRotations(Shape.I, new int[] {-2, -1, +0, +1}, new int[] {+0, +0, +0, +0}));
+		map.put(Shape.J, createRotations(Shape.J, new int[] {+1, +1, +0, -1}, new int[] {+1, +0, +0, +0}));
+		map.put(Shape.L, createRotations(Shape.L, new int[] {-1, -1, +0, +1}, new int[] {+1, +0, +0, +0}));
+		map.put(Shape.O, createRotations(Shape.O, new int[] {+0, +1, +0, +1}, new int[] {+0, +0, +1, +1}));
+		map.put(Shape.S, createRotations(Shape.S, new int[] {+1, +0, +0, -1}, new int[] {+0, +0, +1, +1}));
+		map.put(Shape.T, createRotations(Shape.T, new int[] {-1, +0, +1, +0}, new int[] {+0, +0, +0, +1}));
+		map.put(Shape.Z, createRotations(Shape.Z, new int[] {+0, -1, +1, +0}, new int[] {+0, +0, +1, +1}));
+
+		tetrominoes = Collections.unmodifiableMap(map);
 	}
 
-	/**
-	 * A lazily-filled cache of the clockwise-rotation of tetrominoes.
-	 */
-	private static Map<Tetromino, Tetromino> rotationCache = new HashMap<>();
+	private final Shape shape;
+	private final int rotation;
+	private final int[] xs;
+	private final int[] ys;
+	private final int[] bottom;
+
+	private final int minX;
+	private final int maxX;
+	private final int minY;
+	private final int maxY;
+	private final int hash;
+
+	private Tetromino clockwise;
+	private Tetromino counterClockwise;
 
 	/**
-	 * Point comparator for x-values.
+	 * Creates a new Tetromino.
+	 *
+	 * @param shape    The tetromino shape.
+	 * @param rotation The rotation index.
+	 * @param xs       The x-positions of the points composing the tetromino.
+	 * @param ys       The y-positions of the points composing the tetromino.
 	 */
-	private static Comparator<Point> xComparator = (p1, p2) -> p1.x - p2.x;
+	private Tetromino(Shape shape, int rotation, int[] xs, int[] ys) {
+		this.shape = shape;
+		this.rotation = rotation;
+		this.xs = xs;
+		this.ys = ys;
+
+		int minX = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE;
+		int minY = Integer.MAX_VALUE;
+		int maxY = Integer.MIN_VALUE;
+
+		int hash = shape.hashCode();
+
+		for (int i = 0; i < xs.length; i++) {
+			minX = Math.min(minX, xs[i]);
+			maxX = Math.max(maxX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxY = Math.max(maxY, ys[i]);
+
+			hash = 31 * hash + xs[i];
+			hash = 31 * hash + ys[i];
+		}
+
+		this.minX = minX;
+		this.maxX = maxX;
+		this.minY = minY;
+		this.maxY = maxY;
+		this.hash = hash;
+
+		bottom = new int[maxX - minX + 1];
+		Arrays.fill(bottom, Integer.MIN_VALUE);
+
+		for (int i = 0; i < xs.length; i++) {
+			bottom[xs[i] - minX] = Math.max(bottom[xs[i] - minX], ys[i]);
+		}
+	}
+
 	/**
-	 * Point comparator for y-values.
+	 * Constructs every rotation of a shape and links each rotation to its neighbors.
+	 *
+	 * @param shape The tetromino shape.
+	 * @param xs    The x-positions of the points composing the unrotated tetromino.
+	 * @param ys    The y-positions of the points composing the unrotated tetromino.
+	 *
+	 * @return The unrotated tetromino.
 	 */
-	private static Comparator<Point> yComparator = (p1, p2) -> p1.y - p2.y;
+	private static Tetromino createRotations(Shape shape, int[] xs, int[] ys) {
+		Tetromino[] table = new Tetromino[ROTATIONS];
+		table[0] = new Tetromino(shape, 0, xs, ys);
+
+		for (int r = 1; r < ROTATIONS; r++) {
+			if (shape == Shape.O) {
+				table[r] = table[0];
+				continue;
+			}
+
+			int[] rxs = new int[xs.length];
+			int[] rys = new int[ys.length];
 
-	private Shape shape;
-	private List<Point> points;
+			for (int i = 0; i < xs.length; i++) {
+				rxs[i] = -table[r - 1].ys[i];
+				rys[i] = +table[r - 1].xs[i];
+			}
+
+			table[r] = new Tetromino(shape, r, rxs, rys);
+		}
+
+		for (int r = 0; r < ROTATIONS; r++) {
+			table[r].clockwise = table[(r + 1) % ROTATIONS];
+			table[r].counterClockwise = table[(r + ROTATIONS - 1) % ROTATIONS];
+		}
+
+		rotations[shape.ordinal()] = table;
+		return table[0];
+	}
 
 	/**
-	 * Creates a new Tetromino.
+	 * Retrieves a pre-constructed rotation of a shape.
+	 *
+	 * @param shape    The tetromino shape.
+	 * @param rotation The number of clockwise rotations applied to the one-sided tetromino.
 	 *
-	 * @param shape  The tetromino shape.
-	 * @param points The points composing the tetromino.
+	 * @return The tetromino.
 	 */
-	private Tetromino(Shape shape, Point... points) {
-		this.shape = shape;
-		this.points = Arrays.asList(points);
+	public static Tetromino get(Shape shape, int rotation) {
+		return rotations[shape.ordinal()][rotation & (ROTATIONS - 1)];
 	}
 
 	/**
@@ -88,11 +188,18 @@ public class Tetromino
 		return shape;
 	}
 
+	/**
+	 * @return The number of clockwise rotations applied to the one-sided tetromino.
+	 */
+	public int getRotation() {
+		return rotation;
+	}
+
 	/**
 	 * @return The number of points stored in the tetromino.
 	 */
 	public int getSize() {
-		return points.size();
+		return xs.length;
 	}
 
 	/**
@@ -103,7 +210,7 @@ public class Tetromino
 	 * @return The x-position.
 	 */
 	public int getX(int i) {
-		return points.get(i).x;
+		return xs[i];
 	}
 
 	/**
@@ -114,98 +221,101 @@ public class Tetromino
 	 * @return The y-position.
 	 */
 	public int getY(int i) {
-		return points.get(i).y;
+		return ys[i];
+	}
+
+	/**
+	 * Retrieves the bottom profile of the tetromino. The lowest point of each column lies
+	 * <tt>getBottom(col)</tt> rows beneath the y-position of the tetromino. Columns are indexed
+	 * from zero, starting at the column of the point with the smallest x-component.
+	 *
+	 * @param col The column index, relative to the smallest x-component.
+	 *
+	 * @return The y-component value of the lowest point in that column.
+	 */
+	public int getBottom(int col) {
+		return bottom[col];
 	}
 
 	/**
 	 * @return The x-component value of the point with the smallest x-component.
 	 */
 	public int getMinX() {
-		return Collections.min(points, xComparator).x;
+		return minX;
 	}
 
 	/**
 	 * @return The x-component value of the point with the largest x-component.
 	 */
 	public int getMaxX() {
-		return Collections.max(points, xComparator).x;
+		return maxX;
 	}
 
 	/**
 	 * @return The y-component value of the point with the smallest y-component.
 	 */
 	public int getMinY() {
-		return Collections.min(points, yComparator).y;
+		return minY;
 	}
 
 	/**
 	 * @return The y-component value of the point with the largest y-component.
 	 */
 	public int getMaxY() {
-		return Collections.max(points, yComparator).y;
+		return maxY;
 	}
 
 	/**
 	 * @return The number of horizontal blocks the tetromino occupies.
 	 */
 	public int getWidth() {
-		return Math.abs(getMinX()) + Math.abs(getMaxX()) + 1;
+		return Math.abs(minX) + Math.abs(maxX) + 1;
 	}
 
 	/**
 	 * @return The number of vertical blocks the tetromino occupies.
 	 */
 	public int getHeight() {
-		return Math.abs(getMinY()) + Math.abs(getMaxY()) + 1;
+		return Math.abs(minY) + Math.abs(maxY) + 1;
 	}
 
 	/**
-	 * Creates a tetromino which is a clockwise transformation of <tt>original</tt>.
+	 * Retrieves the tetromino which is a clockwise transformation of <tt>original</tt>.
 	 *
 	 * @param original The tetromino to transform.
 	 *
-	 * @return A new tetromino.
+	 * @return The rotated tetromino.
 	 */
 	public static Tetromino rotateClockwise(Tetromino original) {
-		if (original.shape == Shape.O) {
-			return original;
-		}
-
-		if (!rotationCache.containsKey(original)) {
-			Point[] points = new Point[original.getSize()];
-
-			int i = 0;
-			for (Point p : original.points) {
-				points[i++] = new Point(-p.y, p.x);
-			}
-
-			rotationCache.put(original, new Tetromino(original.shape, points));
-		}
-
-		return rotationCache.get(original);
+		return original.clockwise;
 	}
 
 	/**
-	 * Creates a tetromino which is a counter-clockwise transformation of <tt>original</tt>.
+	 * Retrieves the tetromino which is a counter-clockwise transformation of <tt>original</tt>.
 	 *
 	 * @param original The tetromino to transform.
 	 *
-	 * @return A new tetromino.
+	 * @return The rotated tetromino.
 	 */
 	public static Tetromino rotateCounterClockwise(Tetromino original) {
-		return rotateClockwise(rotateClockwise(rotateClockwise(original)));
+		return original.counterClockwise;
+	}
+
+	/**
+	 * Retrieves the tetromino which is <tt>turns</tt> clockwise transformations of <tt>original</tt>.
+	 *
+	 * @param original The tetromino to transform.
+	 * @param turns    The number of clockwise rotations.
+	 *
+	 * @return The rotated tetromino.
+	 */
+	public static Tetromino rotate(Tetromino original, int turns) {
+		return get(original.shape, original.rotation + turns);
 	}
 
 	@Override
 	public int hashCode() {
-		int result = shape.hashCode();
-
-		for (int i = 0; i < this.getSize(); i++) {
-			result = 31 * result + this.getX(i);
-			result = 31 * result + this.getY(i);
-		}
-
-		return result;
+		return hash;
 	}
 
 	@Override
@@ -232,20 +342,4 @@ public class Tetromino
 
 		return true;
 	}
-
-	/**
-	 * A Point represents a single (x, y) position.
-	 *
-	 * @author Eric Fritz
-	 */
-	private static class Point
-	{
-		public int x;
-		public int y;
-
-		public Point(int x, int y) {
-			this.x = x;
-			this.y = y;
-		}
-	}
 }
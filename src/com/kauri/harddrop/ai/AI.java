@@ -21,15 +21,22 @@
 
 package com.kauri.harddrop.ai;
 
+import com.kauri.harddrop.Board;
 import com.kauri.harddrop.GameContext;
+import com.kauri.harddrop.Tetromino;
 import com.kauri.harddrop.command.Command;
 import com.kauri.harddrop.command.HardDropCommand;
 import com.kauri.harddrop.command.MoveLeftCommand;
 import com.kauri.harddrop.command.MoveRightCommand;
+import com.kauri.harddrop.command.PlaceCommand;
 import com.kauri.harddrop.command.RotateClockwiseCommand;
 import com.kauri.harddrop.command.SoftDropCommand;
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author Eric Fritz
@@ -46,6 +53,10 @@ public class AI
 	private boolean training = false;
 	private MoveEvaluator evaluator;
 
+	private boolean pondering = false;
+	private ExecutorService ponderer;
+	private Ponder ponder;
+
 	public AI(GameContext context, MoveEvaluator evaluator) {
 		this.context = context;
 		this.evaluator = evaluator;
@@ -58,45 +69,178 @@ public class AI
 			lastUpdate = time;
 
 			if (commands.size() == 0) {
-				int x1 = context.getX();
-				int y1 = context.getY();
-				int x2 = context.getBoard().getSpawnX(context.getPreview());
-				int y2 = context.getBoard().getSpawnY(context.getPreview());
-
-				Move move = evaluator.getNextMove(context.getBoard(), context.getCurrent(), x1, y1, context.getPreview(), x2, y2);
-
-				int rDelta = move.getRotationDelta();
-				int mDelta = move.getMovementDelta();
-
-				int currX = context.getBoard().getSpawnX(context.getCurrent()) + mDelta;
-				int currY = context.getBoard().getSpawnY(context.getCurrent());
-
-				while (rDelta != 0 || mDelta != 0) {
-					if (rDelta > 0) {
-						rDelta--;
-						commands.add(new RotateClockwiseCommand(context));
-					} else if (mDelta < 0) {
-						mDelta++;
-						commands.add(new MoveLeftCommand(context));
-					} else if (mDelta > 0) {
-						mDelta--;
-						commands.add(new MoveRightCommand(context));
-					}
-				}
+				Move move = plan();
 
-				if (delay > 1) {
-					while (context.getBoard().isFalling(context.getCurrent(), currX, currY--)) {
-						commands.add(new SoftDropCommand(context));
-					}
+				if (delay == 1) {
+					commands.add(new PlaceCommand(context, move.getRotationDelta(), move.getMovementDelta()));
+				} else {
+					queue(move);
 				}
-
-				commands.add(new HardDropCommand(context));
 			}
 
 			animate();
 		}
 	}
 
+	/**
+	 * Places the current piece immediately, ignoring the delay between commands. The commands are
+	 * stored in the game, and are applied the next time the game executes its commands.
+	 */
+	public void step() {
+		if (commands.size() > 0) {
+			// Finish the piece which is already being animated.
+
+			while (commands.size() > 0) {
+				context.store(commands.remove());
+			}
+
+			return;
+		}
+
+		Move move = plan();
+		context.store(new PlaceCommand(context, move.getRotationDelta(), move.getMovementDelta()));
+	}
+
+	/**
+	 * Chooses the move for the current piece.
+	 *
+	 * @return The move.
+	 */
+	private Move plan() {
+		int x1 = context.getX();
+		int y1 = context.getY();
+		int x2 = context.getBoard().getSpawnX(context.getPreview());
+		int y2 = context.getBoard().getSpawnY(context.getPreview());
+
+		Move move = takePonderedMove(x1, y1);
+
+		if (move == null) {
+			move = evaluator.getNextMove(context.getBoard(), context.getCurrent(), x1, y1, context.getPreview(), x2, y2);
+		}
+
+		// Pondering needs the piece after the preview, which an adaptive selector must not choose early.
+
+		if (pondering && evaluator.canPonder() && !context.getSequence().isAdaptive()) {
+			startPonder(move, x1, y1);
+		}
+
+		return move;
+	}
+
+	/**
+	 * Queues the commands which rotate, move, and lower the current piece one step at a time.
+	 *
+	 * @param move The move for the current piece.
+	 */
+	private void queue(Move move) {
+		int rDelta = move.getRotationDelta();
+		int mDelta = move.getMovementDelta();
+
+		int currX = context.getBoard().getSpawnX(context.getCurrent()) + mDelta;
+		int currY = context.getBoard().getSpawnY(context.getCurrent());
+
+		while (rDelta != 0 || mDelta != 0) {
+			if (rDelta > 0) {
+				rDelta--;
+				commands.add(new RotateClockwiseCommand(context));
+			} else if (mDelta < 0) {
+				mDelta++;
+				commands.add(new MoveLeftCommand(context));
+			} else if (mDelta > 0) {
+				mDelta--;
+				commands.add(new MoveRightCommand(context));
+			}
+		}
+
+		while (context.getBoard().isFalling(context.getCurrent(), currX, currY--)) {
+			commands.add(new SoftDropCommand(context));
+		}
+
+		commands.add(new HardDropCommand(context));
+	}
+
+	/**
+	 * Starts computing the move for the preview piece in the background. The move is computed on
+	 * the board projected by placing the current piece as described by the given move and clearing
+	 * any completed rows.
+	 *
+	 * @param move The move chosen for the current piece.
+	 * @param x1   The x-position of the current piece.
+	 * @param y1   The y-position of the current piece.
+	 */
+	private void startPonder(Move move, int x1, int y1) {
+		Tetromino current = Tetromino.rotate(context.getCurrent(), move.getRotationDelta());
+		Tetromino preview = context.getPreview();
+		Tetromino next = context.getSequence().peek(2);
+
+		Board board = context.getBoard().tryClone(null);
+
+		int x = x1 + move.getMovementDelta();
+		board.addPiece(current, x, board.dropHeight(current, x, y1));
+		board.removeRows(board.getFullRows());
+
+		int x2 = board.getSpawnX(preview);
+		int y2 = board.getSpawnY(preview);
+		int x3 = board.getSpawnX(next);
+		int y3 = board.getSpawnY(next);
+
+		// The evaluator only reads its board, but the board must not change under it.
+		Board snapshot = board.tryClone(null);
+		MoveEvaluator evaluator = this.evaluator;
+
+		if (ponderer == null) {
+			ponderer = Executors.newSingleThreadExecutor((r) -> {
+				Thread thread = new Thread(r, "ponder");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		ponder = new Ponder(board, preview, next, x2, y2, evaluator, evaluator.getScoring().getWeights(), ponderer.submit(() -> evaluator.getNextMove(snapshot, preview, x2, y2, next, x3, y3)));
+	}
+
+	/**
+	 * Retrieves the move pondered for the current piece. The move is discarded if the game has not
+	 * reached the state that was projected, e.g. if junk rows were added, or if the evaluator or
+	 * its weights have since changed.
+	 *
+	 * @param x1 The x-position of the current piece.
+	 * @param y1 The y-position of the current piece.
+	 *
+	 * @return The pondered move, or <tt>null</tt> if there is no valid pondered move.
+	 */
+	private Move takePonderedMove(int x1, int y1) {
+		if (ponder == null) {
+			return null;
+		}
+
+		Ponder p = ponder;
+		ponder = null;
+
+		Move move;
+
+		try {
+			// Wait even for a move which is discarded, as evaluators are not safe to share.
+			move = p.move.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+			return null;
+		}
+
+		if (p.evaluator != evaluator || p.weights != evaluator.getScoring().getWeights()) {
+			return null;
+		}
+
+		if (p.current != context.getCurrent() || p.preview != context.getPreview() || p.x != x1 || p.y != y1 || !p.board.equals(context.getBoard())) {
+			return null;
+		}
+
+		return move;
+	}
+
 	private void animate() {
 		if (commands.size() > 0) {
 			do {
@@ -124,4 +268,50 @@ public class AI
 	public void setDelay(int delay) {
 		this.delay = delay;
 	}
+
+	public boolean isPondering() {
+		return pondering;
+	}
+
+	/**
+	 * Sets whether the move for the preview piece is computed in the background while the current
+	 * piece is being animated. Only evaluators which allow it are used to ponder, and only while
+	 * the piece sequence is not adaptive.
+	 *
+	 * @param pondering <tt>true</tt> to enable pondering.
+	 */
+	public void setPondering(boolean pondering) {
+		this.pondering = pondering;
+	}
+
+	public MoveEvaluator getEvaluator() {
+		return evaluator;
+	}
+
+	public void setEvaluator(MoveEvaluator evaluator) {
+		this.evaluator = evaluator;
+	}
+
+	private static class Ponder
+	{
+		private final Board board;
+		private final Tetromino current;
+		private final Tetromino preview;
+		private final int x;
+		private final int y;
+		private final MoveEvaluator evaluator;
+		private final Weights weights;
+		private final Future<Move> move;
+
+		public Ponder(Board board, Tetromino current, Tetromino preview, int x, int y, MoveEvaluator evaluator, Weights weights, Future<Move> move) {
+			this.board = board;
+			this.current = current;
+			this.preview = preview;
+			this.x = x;
+			this.y = y;
+			this.evaluator = evaluator;
+			this.weights = weights;
+			this.move = move;
+		}
+	}
 }
@@ -0,0 +1,106 @@
+/*
+ * This file is part of the tetris package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauri.harddrop.ai;
+
+import com.kauri.harddrop.Board;
+import com.kauri.harddrop.GameContext;
+import com.kauri.harddrop.Tetromino;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A move evaluator which searches as deep as it can within a fixed time budget per piece.
+ * <p>
+ * The search is iterative-deepening: a beam search of one piece is always completed first, so a
+ * move is available no matter how large the board. Searches of two, three, and more pieces follow
+ * until either the maximum depth is reached or the budget runs out, at which point the search in
+ * progress is abandoned and the move from the deepest completed search is used. The time taken by
+ * a move is therefore bounded by the budget plus the time to complete a single ply.
+ * <p>
+ * When the given pieces are not those of the game, the piece sequence is adaptive, or the maximum
+ * depth is two or less, only the given current and preview pieces are searched, in the same way
+ * and within the same budget.
+ *
+ * @author Eric Fritz
+ */
+public class AnytimeEvaluator extends BeamSearchEvaluator
+{
+	private long budget;
+	private int lastDepth = 0;
+
+	/**
+	 * Creates a new AnytimeEvaluator.
+	 *
+	 * @param scoring   The scoring system.
+	 * @param context   The game whose piece sequence is searched.
+	 * @param maxDepth  The maximum number of pieces to look ahead, including the current piece.
+	 * @param beamWidth The number of boards kept at each ply.
+	 * @param budget    The time budget per piece, in milliseconds.
+	 */
+	public AnytimeEvaluator(ScoringSystem scoring, GameContext context, int maxDepth, int beamWidth, long budget) {
+		super(scoring, context, maxDepth, beamWidth);
+		this.budget = budget;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	public void setBudget(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * @return The depth of the deepest search completed for the last move.
+	 */
+	public int getLastDepth() {
+		return lastDepth;
+	}
+
+	@Override
+	public Move getNextMove(Board board, Tetromino current, int x1, int y1, Tetromino preview, int x2, int y2) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget);
+		Tetromino[] pieces = getPieces(current, preview);
+
+		if (pieces == null) {
+			// Search only the given pieces, but still within the budget.
+			pieces = preview == null ? new Tetromino[] {current} : new Tetromino[] {current, preview};
+		}
+
+		validateTable();
+
+		Move best = search(board, pieces, x1, y1, 1, NO_DEADLINE);
+		lastDepth = 1;
+
+		for (int plies = 2; plies <= pieces.length; plies++) {
+			Move move = search(board, pieces, x1, y1, plies, deadline);
+
+			if (move == null) {
+				break;
+			}
+
+			best = move;
+			lastDepth = plies;
+		}
+
+		return best;
+	}
+}
@@ -0,0 +1,309 @@
+/*
+ * This file is part of the tetris package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauri.harddrop.ai;
+
+import com.kauri.harddrop.Board;
+import com.kauri.harddrop.GameContext;
+import com.kauri.harddrop.Tetromino;
+import com.kauri.harddrop.sequence.PieceSequence;
+
+/**
+ * A move evaluator which looks several pieces ahead in the piece sequence of a game.
+ * <p>
+ * The search proceeds one piece at a time. Every placement of the next piece on every board kept
+ * from the previous ply is scored, and only the <tt>beamWidth</tt> highest scoring boards are
+ * kept for the next ply. Full rows are cleared between plies. The cost of a search therefore grows
+ * linearly with its depth. The move chosen is the first placement on the path to the highest
+ * scoring board of the last ply.
+ * <p>
+ * This evaluator only looks ahead when it is asked about the current and preview pieces of the
+ * game, and the piece sequence is not adaptive (see {@link PieceSequence#isAdaptive()}), as the
+ * pieces after the preview would otherwise be chosen before the game reaches them. In every other
+ * case it behaves like a {@link MoveEvaluator}.
+ *
+ * @author Eric Fritz
+ */
+public class BeamSearchEvaluator extends MoveEvaluator
+{
+	/**
+	 * A deadline which never expires.
+	 */
+	static final long NO_DEADLINE = Long.MIN_VALUE;
+
+	private GameContext context;
+	private int depth;
+	private int beamWidth;
+
+	/**
+	 * Creates a new BeamSearchEvaluator.
+	 *
+	 * @param scoring   The scoring system.
+	 * @param context   The game whose piece sequence is searched.
+	 * @param depth     The number of pieces to look ahead, including the current piece.
+	 * @param beamWidth The number of boards kept at each ply.
+	 */
+	public BeamSearchEvaluator(ScoringSystem scoring, GameContext context, int depth, int beamWidth) {
+		super(scoring);
+		this.context = context;
+		this.depth = depth;
+		this.beamWidth = beamWidth;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public int getBeamWidth() {
+		return beamWidth;
+	}
+
+	@Override
+	public boolean canPonder() {
+		// The pieces after the preview are read from the game, which is not safe off its thread.
+		return false;
+	}
+
+	@Override
+	public Move getNextMove(Board board, Tetromino current, int x1, int y1, Tetromino preview, int x2, int y2) {
+		Tetromino[] pieces = getPieces(current, preview);
+
+		if (pieces == null) {
+			return super.getNextMove(board, current, x1, y1, preview, x2, y2);
+		}
+
+		validateTable();
+		return search(board, pieces, x1, y1, depth, NO_DEADLINE);
+	}
+
+	/**
+	 * Retrieves the pieces to search, starting with the given current and preview pieces.
+	 *
+	 * @param current The current piece.
+	 * @param preview The preview piece.
+	 *
+	 * @return An array of <tt>depth</tt> pieces, or <tt>null</tt> if the given pieces are not the
+	 * current and preview pieces of the game or the sequence is adaptive.
+	 */
+	Tetromino[] getPieces(Tetromino current, Tetromino preview) {
+		PieceSequence sequence = context.getSequence();
+
+		if (preview == null || depth <= 2 || sequence.isAdaptive() || sequence.peekCurrent().getShape() != current.getShape() || sequence.peekPreview() != preview) {
+			return null;
+		}
+
+		Tetromino[] pieces = new Tetromino[depth];
+		pieces[0] = current;
+		pieces[1] = preview;
+
+		for (int i = 2; i < depth; i++) {
+			pieces[i] = sequence.peek(i);
+		}
+
+		return pieces;
+	}
+
+	/**
+	 * Searches the first <tt>plies</tt> pieces of the given array.
+	 *
+	 * @param board    The board.
+	 * @param pieces   The pieces, starting with the current piece.
+	 * @param x1       The x-position of the current piece.
+	 * @param y1       The y-position of the current piece.
+	 * @param plies    The number of pieces to search.
+	 * @param deadline The value of {@link System#nanoTime()} at which to abandon the search, or
+	 *                 {@link BeamSearchEvaluator#NO_DEADLINE}.
+	 *
+	 * @return The best move for the current piece, or <tt>null</tt> if the deadline passed.
+	 */
+	Move search(Board board, Tetromino[] pieces, int x1, int y1, int plies, long deadline) {
+		Node[] beam = new Node[] {new Node(board, 0, 0, 0, 0)};
+		Node[] kept = beam;
+
+		for (int ply = 0; ply < plies; ply++) {
+			Beam candidates = new Beam(beamWidth);
+
+			for (int n = 0; n < beam.length; n++) {
+				if (deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0) {
+					return null;
+				}
+
+				expand(candidates, beam, n, pieces[ply], ply == 0, x1, y1);
+			}
+
+			if (candidates.size == 0) {
+				break;
+			}
+
+			kept = candidates.materialize(beam, pieces[ply]);
+			beam = kept;
+		}
+
+		if (kept[0].board == board) {
+			// Not even the current piece could be placed.
+			return new Move(Double.NEGATIVE_INFINITY, 0, 0);
+		}
+
+		return new Move(kept[0].score, kept[0].rotation, kept[0].translation);
+	}
+
+	private void expand(Beam candidates, Node[] beam, int n, Tetromino piece, boolean root, int x1, int y1) {
+		Board board = beam[n].board;
+
+		int x = root ? x1 : board.getSpawnX(piece);
+		int y = root ? y1 : board.getSpawnY(piece);
+
+		if (!root && !board.canMove(piece, x, y)) {
+			// The piece cannot spawn, so the game would be over on this board.
+			return;
+		}
+
+		int count = 0;
+		Tetromino[] pieces = new Tetromino[Tetromino.ROTATIONS * board.getWidth()];
+		int[] rotations = new int[Tetromino.ROTATIONS * board.getWidth()];
+		int[] translations = new int[Tetromino.ROTATIONS * board.getWidth()];
+		int[] xs = new int[Tetromino.ROTATIONS * board.getWidth()];
+		int[] ys = new int[Tetromino.ROTATIONS * board.getWidth()];
+
+		for (int i = 0; i < Tetromino.ROTATIONS; i++) {
+			Tetromino rotated = Tetromino.rotate(piece, i);
+
+			int min = getMaxTranslationDeltaMagnitude(board, rotated, x, y, -1);
+			int max = getMaxTranslationDeltaMagnitude(board, rotated, x, y, +1);
+
+			for (int translation = min; translation <= max; translation++) {
+				pieces[count] = rotated;
+				rotations[count] = i;
+				translations[count] = translation;
+				xs[count] = x + translation;
+				ys[count] = board.dropHeight(rotated, x + translation, y);
+				count++;
+			}
+		}
+
+		double[] scores = new double[count];
+		getScoring().score(board, pieces, xs, ys, count, scores);
+
+		for (int i = 0; i < count; i++) {
+			double score = scores[i] + getScoring().getWeights().getWeights()[7] * beam[n].clears;
+			candidates.offer(score, n, rotations[i], xs[i], ys[i], root ? rotations[i] : beam[n].rotation, root ? translations[i] : beam[n].translation);
+		}
+	}
+
+	/**
+	 * A board kept by the search, along with the first placement on the path leading to it.
+	 *
+	 * @author Eric Fritz
+	 */
+	private static class Node
+	{
+		public Board board;
+		public int clears;
+		public double score;
+		public int rotation;
+		public int translation;
+
+		public Node(Board board, int clears, double score, int rotation, int translation) {
+			this.board = board;
+			this.clears = clears;
+			this.score = score;
+			this.rotation = rotation;
+			this.translation = translation;
+		}
+	}
+
+	/**
+	 * The highest scoring placements of a ply, ordered from best to worst. Placements with equal
+	 * scores are kept in the order they were offered.
+	 *
+	 * @author Eric Fritz
+	 */
+	private static class Beam
+	{
+		public int size = 0;
+		public double[] scores;
+		public int[] parents;
+		public int[] rotations;
+		public int[] xs;
+		public int[] ys;
+		public int[] rootRotations;
+		public int[] rootTranslations;
+
+		public Beam(int width) {
+			scores = new double[width];
+			parents = new int[width];
+			rotations = new int[width];
+			xs = new int[width];
+			ys = new int[width];
+			rootRotations = new int[width];
+			rootTranslations = new int[width];
+		}
+
+		public void offer(double score, int parent, int rotation, int x, int y, int rootRotation, int rootTranslation) {
+			if (size == scores.length && !(score > scores[size - 1])) {
+				return;
+			}
+
+			int i = size == scores.length ? size - 1 : size++;
+
+			while (i > 0 && score > scores[i - 1]) {
+				move(i - 1, i);
+				i--;
+			}
+
+			scores[i] = score;
+			parents[i] = parent;
+			rotations[i] = rotation;
+			xs[i] = x;
+			ys[i] = y;
+			rootRotations[i] = rootRotation;
+			rootTranslations[i] = rootTranslation;
+		}
+
+		public Node[] materialize(Node[] beam, Tetromino piece) {
+			Node[] nodes = new Node[size];
+
+			for (int i = 0; i < size; i++) {
+				Tetromino rotated = Tetromino.rotate(piece, rotations[i]);
+				Board board = beam[parents[i]].board.tryClone(null);
+
+				board.addPiece(rotated, xs[i], ys[i]);
+
+				long full = board.getFullRows();
+				board.removeRows(full);
+
+				nodes[i] = new Node(board, beam[parents[i]].clears + Long.bitCount(full), scores[i], rootRotations[i], rootTranslations[i]);
+			}
+
+			return nodes;
+		}
+
+		private void move(int from, int to) {
+			scores[to] = scores[from];
+			parents[to] = parents[from];
+			rotations[to] = rotations[from];
+			xs[to] = xs[from];
+			ys[to] = ys[from];
+			rootRotations[to] = rootRotations[from];
+			rootTranslations[to] = rootTranslations[from];
+		}
+	}
+}
@@ -0,0 +1,320 @@
+/*
+ * This file is part of the tetris package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kauri.harddrop.ai;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays games on {@link Worker}s in other processes, which connect to it over TCP. Games are queued
+ * until a worker has a free thread, and the games sent to a worker which disconnects or stops
+ * responding are queued again, to be played by another worker.
+ * <p>
+ * The protocol is line based. A worker first sends <tt>HELLO threads</tt>, after which the
+ * coordinator sends it up to <tt>threads</tt> games at once, each as <tt>PLAY id width maxPieces
+ * seed weights...</tt>, where the seed is <tt>-</tt> for a random sequence. The worker replies to
+ * each game with <tt>RESULT id lines pieces</tt>, or with <tt>ERROR id message</tt> if the game
+ * could not be played, in which case the game fails rather than being retried. The worker also
+ * sends <tt>PING</tt> regularly so that it is not mistaken for a dead worker while its games are
+ * long.
+ *
+ * @author Eric Fritz
+ */
+public class Coordinator implements GameRunner, Closeable
+{
+	private ServerSocket server;
+	private int timeout = 10000;
+	private volatile boolean closed = false;
+
+	private AtomicLong ids = new AtomicLong();
+	private BlockingDeque<Task> pending = new LinkedBlockingDeque<>();
+	private Set<Connection> connections = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Creates a new Coordinator which accepts workers on the given port.
+	 *
+	 * @param port The port, or zero for any free port.
+	 *
+	 * @throws IOException If the port cannot be bound.
+	 */
+	public Coordinator(int port) throws IOException {
+		server = new ServerSocket(port);
+		start("coordinator", this::accept);
+	}
+
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	public int getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Sets the time after which a worker which has sent nothing is considered dead. This only
+	 * applies to workers which connect afterwards.
+	 *
+	 * @param timeout The timeout, in milliseconds.
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @return The number of workers currently connected.
+	 */
+	public int getWorkers() {
+		return connections.size();
+	}
+
+	@Override
+	public Future<long[]> play(Weights weights, Long seed, int width, long maxPieces) {
+		if (closed) {
+			throw new IllegalStateException("Coordinator is closed.");
+		}
+
+		Task task = new Task(ids.incrementAndGet(), weights, seed, width, maxPieces);
+		pending.add(task);
+		return task.result;
+	}
+
+	/**
+	 * Disconnects every worker and fails the games which have not been played.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		server.close();
+
+		for (Connection connection : connections) {
+			connection.kill();
+		}
+
+		for (Task task = pending.poll(); task != null; task = pending.poll()) {
+			task.result.completeExceptionally(new IOException("Coordinator closed."));
+		}
+	}
+
+	private void accept() {
+		while (!closed) {
+			try {
+				Connection connection = new Connection(server.accept());
+				start("worker " + connection.name, connection::read);
+			} catch (IOException e) {
+				if (!closed) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private static Thread start(String name, Runnable runnable) {
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * A connected worker. Each connection has a thread which reads the results of the worker, and
+	 * one which sends it games while it has free threads.
+	 *
+	 * @author Eric Fritz
+	 */
+	private class Connection
+	{
+		private Socket socket;
+		private String name;
+		private BufferedReader in;
+		private PrintWriter out;
+
+		private Semaphore slots;
+		private Map<Long, Task> running = new HashMap<>();
+		private Thread sender;
+		private boolean dead = false;
+
+		public Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			this.name = socket.getRemoteSocketAddress().toString();
+
+			socket.setSoTimeout(timeout);
+			socket.setTcpNoDelay(true);
+
+			in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream())));
+		}
+
+		public void read() {
+			try {
+				String[] hello = in.readLine().split(" ");
+
+				if (!hello[0].equals("HELLO")) {
+					throw new IOException("Expected HELLO from " + name);
+				}
+
+				slots = new Semaphore(Integer.parseInt(hello[1]));
+
+				synchronized (this) {
+					connections.add(this);
+					sender = start("sender " + name, this::send);
+				}
+
+				System.out.printf("Worker %s connected with %d threads.\n", name, slots.availablePermits());
+
+				for (String line = in.readLine(); line != null; line = in.readLine()) {
+					String[] parts = line.split(" ");
+
+					// Any other message, such as PING, only shows that the worker is alive.
+
+					if (parts[0].equals("RESULT") || parts[0].equals("ERROR")) {
+						Task task;
+
+						synchronized (this) {
+							task = running.remove(Long.parseLong(parts[1]));
+						}
+
+						if (task != null) {
+							if (parts[0].equals("RESULT")) {
+								task.result.complete(new long[] {Long.parseLong(parts[2]), Long.parseLong(parts[3])});
+							} else {
+								task.result.completeExceptionally(new IOException("Worker " + name + " failed to play game: " + line.substring(line.indexOf(' ', 6) + 1)));
+							}
+
+							slots.release();
+						}
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				// The worker disconnected, timed out, or sent something unexpected.
+			}
+
+			kill();
+		}
+
+		private void send() {
+			try {
+				while (true) {
+					slots.acquire();
+					Task task = pending.take();
+
+					synchronized (this) {
+						if (dead) {
+							pending.addFirst(task);
+							return;
+						}
+
+						running.put(task.id, task);
+
+						out.println(task);
+						out.flush();
+
+						if (out.checkError()) {
+							break;
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				// The connection was killed.
+			}
+
+			kill();
+		}
+
+		/**
+		 * Closes the connection, and queues the games which the worker was playing.
+		 */
+		public synchronized void kill() {
+			if (dead) {
+				return;
+			}
+
+			dead = true;
+			connections.remove(this);
+
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// The connection is no longer used.
+			}
+
+			for (Task task : running.values()) {
+				pending.addFirst(task);
+			}
+
+			if (sender != null) {
+				sender.interrupt();
+
+				if (!closed) {
+					System.out.printf("Worker %s lost - %d games requeued.\n", name, running.size());
+				}
+			}
+
+			running.clear();
+		}
+	}
+
+	/**
+	 * A game to be played by a worker.
+	 *
+	 * @author Eric Fritz
+	 */
+	private static class Task
+	{
+		public long id;
+		public Weights weights;
+		public Long seed;
+		public int width;
+		public long maxPieces;
+		public CompletableFuture<long[]> result = new CompletableFuture<>();
+
+		public Task(long id, Weights weights, Long seed, int width, long maxPieces) {
+			this.id = id;
+			this.weights = weights;
+			this.seed = seed;
+			this.width = width;
+			this.maxPieces = maxPieces;
+		}
+
+		@Override
+		public String toString() {
+			return "PLAY " + id + " " + width + " " + maxPieces + " " + (seed == null ? "-" : seed) + " " + weights;
+		}
+	}
+}
@@ -21,63 +21,284 @@
 
 package com.kauri.harddrop.ai;
 
+import com.kauri.harddrop.Board;
+import com.kauri.harddrop.GameContext;
+import com.kauri.harddrop.sequence.PieceSequence;
+import com.kauri.harddrop.sequence.ShufflePieceSelector;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * @author Eric Fritz
  */
 public class Evolution
 {
-	private final static String filename = "aiscores.txt";
+	/**
+	 * The ways in which the games played by a candidate are combined into its fitness.
+	 */
+	public enum Fitness
+	{
+		MEAN,
+		MEDIAN,
+		MIN;
+
+		/**
+		 * Combines the number of lines cleared in each game into a single fitness.
+		 *
+		 * @param lines The lines cleared in each game.
+		 *
+		 * @return The fitness.
+		 */
+		public double aggregate(long[] lines) {
+			long[] sorted = lines.clone();
+			Arrays.sort(sorted);
+
+			switch (this) {
+				case MEAN:
+					return Arrays.stream(sorted).average().orElse(0);
 
-	private final int populationSize = 16;
-	private final double elitePercent = 1 / 4.0;
-	private final double mutationRate = 1 / 10.0;
+				case MEDIAN:
+					return (sorted[(sorted.length - 1) / 2] + sorted[sorted.length / 2]) / 2.0;
+
+				default:
+					return sorted[0];
+			}
+		}
+	}
+
+	private final String filename;
+
+	private final int populationSize;
+	private final int genes;
+	private double elitePercent = 1 / 4.0;
+	private double mutationRate = 1 / 10.0;
+	private boolean verbose = true;
 
 	private int current = 0;
 	private int generation = 1;
 
-	Long[] scores = new Long[populationSize];
-	Weights[] population = new Weights[populationSize];
+	private long[] seeds = new long[0];
+	private Fitness fitness = Fitness.MEAN;
+	private boolean memoizing = true;
+	private FitnessMemo memo = new FitnessMemo();
+
+	private double best = Double.NaN;
+
+	double[] scores;
+	double[] survival;
+	Weights[] population;
 
 	private ScoringSystem scoring;
 
 	/**
-	 * Creates a new Evolution.
+	 * Creates a new Evolution with a population of sixteen candidates which evolve every weight,
+	 * saved between runs.
 	 */
 	public Evolution(ScoringSystem scoring) {
+		this(scoring, 16, ScoringSystem.FEATURES, "aiscores.txt");
+	}
+
+	/**
+	 * Creates a new Evolution. If the population is read from a file which holds fewer candidates
+	 * than the population size, the remaining candidates are generated randomly.
+	 *
+	 * @param scoring        The scoring system to which the current candidate is applied.
+	 * @param populationSize The number of candidates in each generation.
+	 * @param genes          The number of features whose weights are evolved, starting with the
+	 *                       first. The weights of the remaining features are zero.
+	 * @param filename       The file from which the population is read and to which each new
+	 *                       generation is saved, or <tt>null</tt> to start from a random
+	 *                       population which is not saved.
+	 */
+	public Evolution(ScoringSystem scoring, int populationSize, int genes, String filename) {
+		if (populationSize < 2 || genes < 1 || genes > ScoringSystem.FEATURES) {
+			throw new IllegalArgumentException("Invalid population size or gene count.");
+		}
+
 		this.scoring = scoring;
+		this.populationSize = populationSize;
+		this.genes = genes;
+		this.filename = filename;
 
-		try (Scanner scanner = new Scanner(new BufferedReader(new FileReader(filename)))) {
-			for (int i = 0; i < populationSize; i++) {
-				double[] weights = new double[8];
+		scores = new double[populationSize];
+		survival = new double[populationSize];
+		population = new Weights[populationSize];
 
-				for (int j = 0; j < weights.length; j++) {
-					weights[j] = scanner.nextDouble();
-				}
+		int loaded = 0;
 
-				population[i] = new Weights(weights);
-				scanner.nextLine();
-			}
-		} catch (FileNotFoundException e) {
-			System.out.println("Population data not found - generating random population.");
+		if (filename != null) {
+			try (Scanner scanner = new Scanner(new BufferedReader(new FileReader(filename)))) {
+				for (; loaded < populationSize && scanner.hasNextDouble(); loaded++) {
+					double[] weights = new double[ScoringSystem.FEATURES];
 
-			for (int i = 0; i < populationSize; i++) {
-				double[] weights = new double[8];
+					for (int j = 0; j < weights.length; j++) {
+						double weight = scanner.nextDouble();
+						weights[j] = j < genes ? weight : 0;
+					}
 
-				for (int j = 0; j < weights.length; j++) {
-					weights[j] = Math.random() * 10 - 5;
+					population[loaded] = new Weights(weights);
+					scanner.nextLine();
 				}
-
-				population[i] = new Weights(weights);
+			} catch (FileNotFoundException e) {
+				System.out.println("Population data not found - generating random population.");
 			}
 		}
+
+		for (int i = loaded; i < populationSize; i++) {
+			population[i] = createRandomWeights();
+		}
+	}
+
+	private Weights createRandomWeights() {
+		double[] weights = new double[ScoringSystem.FEATURES];
+
+		for (int j = 0; j < genes; j++) {
+			weights[j] = ThreadLocalRandom.current().nextDouble() * 10 - 5;
+		}
+
+		return new Weights(weights);
+	}
+
+	public int getPopulationSize() {
+		return populationSize;
+	}
+
+	public int getGenes() {
+		return genes;
+	}
+
+	public double getElitePercent() {
+		return elitePercent;
+	}
+
+	/**
+	 * Sets the fraction of each generation which is carried into the next generation unchanged.
+	 * The remaining candidates are bred from the better half of the generation.
+	 *
+	 * @param elitePercent The fraction of elite candidates, between zero and one.
+	 */
+	public void setElitePercent(double elitePercent) {
+		this.elitePercent = elitePercent;
+	}
+
+	public double getMutationRate() {
+		return mutationRate;
+	}
+
+	/**
+	 * Sets the probability with which each gene of a bred candidate is replaced by a random weight.
+	 *
+	 * @param mutationRate The mutation rate, between zero and one.
+	 */
+	public void setMutationRate(double mutationRate) {
+		this.mutationRate = mutationRate;
+	}
+
+	public boolean isVerbose() {
+		return verbose;
+	}
+
+	/**
+	 * Sets whether the score of each candidate and a summary of each generation are printed.
+	 *
+	 * @param verbose <tt>true</tt> to print the results of each generation.
+	 */
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/**
+	 * @return The number of the generation being played, starting with one.
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @return The highest score of the last generation, or <tt>NaN</tt> if no generation has been
+	 * played.
+	 */
+	public double getBestScore() {
+		return best;
+	}
+
+	/**
+	 * Retrieves the best candidates of the last generation, which are the first elites of the
+	 * current population.
+	 *
+	 * @param count The maximum number of candidates.
+	 *
+	 * @return The candidates, best first. No more candidates are returned than there are elites.
+	 */
+	public Weights[] getBest(int count) {
+		int elite = (int) Math.ceil(populationSize * elitePercent);
+		return Arrays.copyOf(population, Math.min(count, elite));
+	}
+
+	/**
+	 * Replaces the last candidates of the current population, which are bred rather than elite,
+	 * with the given candidates. This must not be called while a generation is being played.
+	 *
+	 * @param migrants The candidates to add to the population.
+	 */
+	public void immigrate(Weights... migrants) {
+		int elite = (int) Math.ceil(populationSize * elitePercent);
+
+		for (int i = 0; i < migrants.length && populationSize - 1 - i >= elite; i++) {
+			population[populationSize - 1 - i] = migrants[i];
+		}
+	}
+
+	public long[] getSeeds() {
+		return seeds;
+	}
+
+	/**
+	 * Sets the seeds of the piece sequences played by every candidate when a generation is played
+	 * with {@link Evolution#playGeneration}. As all candidates play the same sequences, the
+	 * differences in their fitness are due to their weights rather than to the pieces they were
+	 * given. If there are no seeds, each candidate plays a single game on its own sequence.
+	 *
+	 * @param seeds The seeds.
+	 */
+	public void setSeeds(long... seeds) {
+		this.seeds = seeds;
+	}
+
+	public Fitness getFitness() {
+		return fitness;
+	}
+
+	public void setFitness(Fitness fitness) {
+		this.fitness = fitness;
+	}
+
+	public boolean isMemoizing() {
+		return memoizing;
+	}
+
+	/**
+	 * Sets whether the results of games are kept for the candidates which survive into the next
+	 * generation. A seeded game is then played only once by the same weights, and the result of
+	 * each new unseeded game is combined with those of the previous generations.
+	 *
+	 * @param memoizing <tt>true</tt> to keep the results of games.
+	 */
+	public void setMemoizing(boolean memoizing) {
+		this.memoizing = memoizing;
 	}
 
 	/**
@@ -93,8 +314,9 @@ public class Evolution
 	 * @param score The number of lines cleared on the last game with the current weights.
 	 */
 	public void submit(long score) {
-		System.out.printf("Generation %-2d - Candidate %-2d: score = %d\n", generation, current + 1, score);
+		log("Generation %-2d - Candidate %-2d: score = %d\n", generation, current + 1, score);
 
+		survival[current] = 0;
 		scores[current++] = score;
 
 		if (current == populationSize) {
@@ -102,6 +324,308 @@ public class Evolution
 		}
 	}
 
+	/**
+	 * Plays a game with every candidate of the current generation at once, then creates the next
+	 * generation from the results. Each game has its own board, piece sequence, and scoring system,
+	 * so the games are independent of each other and of the game the scoring system is used for.
+	 * If seeds are set, each candidate plays one game for each seed, and the games are combined as
+	 * described by the fitness. Games already played by the same weights are not played again.
+	 *
+	 * @param executor  The executor which plays the games, or <tt>null</tt> to play them on the
+	 *                  calling thread.
+	 * @param width     The width of the board.
+	 * @param maxPieces The number of pieces after which a game is stopped, or zero for no limit.
+	 */
+	public void playGeneration(ExecutorService executor, int width, long maxPieces) {
+		playGeneration((weights, seed, w, m) -> submit(executor, () -> play(weights, seed, w, m)), width, maxPieces);
+	}
+
+	/**
+	 * Plays a generation as {@link Evolution#playGeneration(ExecutorService, int, long)} does,
+	 * but with games started by the given runner, which may play them in other processes.
+	 *
+	 * @param runner    The runner which plays the games.
+	 * @param width     The width of the board.
+	 * @param maxPieces The number of pieces after which a game is stopped, or zero for no limit.
+	 */
+	public void playGeneration(GameRunner runner, int width, long maxPieces) {
+		memo.validate(width, maxPieces);
+
+		int count = Math.max(seeds.length, 1);
+		List<List<Future<long[]>>> results = new ArrayList<>();
+
+		for (Weights weights : population) {
+			List<Future<long[]>> games = new ArrayList<>();
+
+			for (int i = 0; i < count; i++) {
+				if (seeds.length == 0) {
+					games.add(runner.play(weights, null, width, maxPieces));
+				} else if (!memoizing || memo.get(weights, seeds[i]) == null) {
+					games.add(runner.play(weights, seeds[i], width, maxPieces));
+				} else {
+					games.add(null);
+				}
+			}
+
+			results.add(games);
+		}
+
+		for (current = 0; current < populationSize; current++) {
+			List<long[]> games = new ArrayList<>();
+
+			for (int i = 0; i < count; i++) {
+				Future<long[]> result = results.get(current).get(i);
+
+				if (result == null) {
+					games.add(memo.get(population[current], seeds[i]));
+					continue;
+				}
+
+				games.add(await(result));
+
+				if (memoizing && seeds.length > 0) {
+					memo.put(population[current], seeds[i], games.get(i));
+				}
+			}
+
+			if (memoizing && seeds.length == 0) {
+				games = memo.add(population[current], games.get(0));
+			}
+
+			record(current, games);
+
+			log("Generation %-2d - Candidate %-2d: score = %.1f\n", generation, current + 1, scores[current]);
+		}
+
+		newGeneration();
+	}
+
+	/**
+	 * Plays the current generation as a race, then creates the next generation from the results.
+	 * All candidates play in rounds, up to a number of pieces which doubles every round until the
+	 * hard limit is reached. After each round, the candidates which are still playing but rank in
+	 * the lower half of those not yet eliminated are stopped, although at least as many candidates
+	 * as there are elites are kept. Games which are already over are never stopped, as they cost
+	 * nothing more to rank.
+	 * <p>
+	 * The score of a stopped candidate is the fitness it reached, and is ranked along with the
+	 * number of pieces it survived. As lines are never lost, a stopped candidate never outranks one
+	 * which was kept. A candidate whose every game has already been played to the hard limit with
+	 * the same weights does not race, and is ranked only once the race is over.
+	 *
+	 * @param executor  The executor which plays the games, or <tt>null</tt> to play them on the
+	 *                  calling thread.
+	 * @param width     The width of the board.
+	 * @param minPieces The number of pieces played in the first round.
+	 * @param maxPieces The number of pieces after which a game is stopped.
+	 */
+	public void raceGeneration(ExecutorService executor, int width, long minPieces, long maxPieces) {
+		if (minPieces <= 0 || maxPieces < minPieces) {
+			throw new IllegalArgumentException("Race requires 0 < minPieces <= maxPieces.");
+		}
+
+		memo.validate(width, maxPieces);
+
+		Simulation[][] simulations = createSimulations(width);
+
+		for (Simulation[] games : simulations) {
+			for (Simulation simulation : games) {
+				if (simulation != null) {
+					simulation.newGame();
+				}
+			}
+		}
+
+		int elite = (int) Math.ceil(populationSize * elitePercent);
+
+		boolean[] running = new boolean[populationSize];
+		List<Integer> contenders = new ArrayList<>();
+		List<Integer> memoized = new ArrayList<>();
+
+		for (int i = 0; i < populationSize; i++) {
+			running[i] = isRunning(simulations[i]);
+			(running[i] ? contenders : memoized).add(i);
+		}
+
+		for (long budget = minPieces; ; budget = Math.min(budget * 2, maxPieces)) {
+			long limit = budget;
+			List<Future<Long>> results = new ArrayList<>();
+
+			for (int c : contenders) {
+				for (Simulation simulation : simulations[c]) {
+					if (running[c] && simulation != null && !simulation.isOver()) {
+						results.add(submit(executor, () -> simulation.resume(limit)));
+					}
+				}
+			}
+
+			for (Future<Long> result : results) {
+				await(result);
+			}
+
+			for (int c : contenders) {
+				record(c, getResults(c, simulations[c], maxPieces));
+				running[c] = running[c] && isRunning(simulations[c]);
+			}
+
+			if (budget == maxPieces || results.isEmpty()) {
+				break;
+			}
+
+			contenders.sort(this::compare);
+
+			int keep = Math.max(elite, (contenders.size() + 1) / 2);
+
+			for (int c : contenders.subList(Math.min(keep, contenders.size()), contenders.size())) {
+				running[c] = false;
+
+				log("Generation %-2d - Candidate %-2d: score = %.1f, pieces = %.0f (eliminated)\n", generation, c + 1, scores[c], survival[c]);
+			}
+
+			contenders = new ArrayList<>(contenders.subList(0, Math.min(keep, contenders.size())));
+		}
+
+		for (int c : contenders) {
+			log("Generation %-2d - Candidate %-2d: score = %.1f, pieces = %.0f\n", generation, c + 1, scores[c], survival[c]);
+		}
+
+		for (int c : memoized) {
+			record(c, getResults(c, simulations[c], maxPieces));
+
+			log("Generation %-2d - Candidate %-2d: score = %.1f, pieces = %.0f (memoized)\n", generation, c + 1, scores[c], survival[c]);
+		}
+
+		current = populationSize;
+		newGeneration();
+	}
+
+	/**
+	 * Creates a game for every seed, or a single unseeded game, for every candidate. The games
+	 * whose result is memoized are left <tt>null</tt>.
+	 */
+	private Simulation[][] createSimulations(int width) {
+		int games = Math.max(seeds.length, 1);
+		Simulation[][] simulations = new Simulation[populationSize][games];
+
+		for (int c = 0; c < populationSize; c++) {
+			for (int i = 0; i < games; i++) {
+				if (seeds.length == 0) {
+					simulations[c][i] = createSimulation(population[c], new ShufflePieceSelector(), width);
+				} else if (!memoizing || memo.get(population[c], seeds[i]) == null) {
+					simulations[c][i] = createSimulation(population[c], new ShufflePieceSelector(seeds[i]), width);
+				}
+			}
+		}
+
+		return simulations;
+	}
+
+	private static Simulation createSimulation(Weights weights, ShufflePieceSelector selector, int width) {
+		ScoringSystem scoring = new ScoringSystem();
+		scoring.setWeights(weights);
+
+		GameContext context = new GameContext();
+		context.setBoard(new Board(width, width * 2));
+		context.setSequence(new PieceSequence(selector));
+
+		return new Simulation(context, new MoveEvaluator(scoring));
+	}
+
+	private static boolean isRunning(Simulation[] games) {
+		return Arrays.stream(games).anyMatch((simulation) -> simulation != null && !simulation.isOver());
+	}
+
+	/**
+	 * Plays a single game to completion, or until the piece limit is reached.
+	 *
+	 * @return The number of lines cleared and the number of pieces placed.
+	 */
+	static long[] play(Weights weights, Long seed, int width, long maxPieces) {
+		Simulation simulation = createSimulation(weights, seed == null ? new ShufflePieceSelector() : new ShufflePieceSelector(seed), width);
+		simulation.setMaxPieces(maxPieces);
+		simulation.play();
+
+		return new long[] {simulation.getContext().getLines(), simulation.getContext().getDrops()};
+	}
+
+	/**
+	 * Retrieves the result of each game of a candidate, taking those which were not played from
+	 * the memo. The result of a seeded game is memoized once the game is over or has reached the
+	 * piece limit.
+	 */
+	private List<long[]> getResults(int candidate, Simulation[] games, long maxPieces) {
+		List<long[]> results = new ArrayList<>();
+
+		for (int i = 0; i < games.length; i++) {
+			if (games[i] == null) {
+				results.add(memo.get(population[candidate], seeds[i]));
+				continue;
+			}
+
+			GameContext context = games[i].getContext();
+			long[] result = new long[] {context.getLines(), context.getDrops()};
+
+			if (memoizing && seeds.length > 0 && (games[i].isOver() || context.getDrops() >= maxPieces)) {
+				memo.put(population[candidate], seeds[i], result);
+			}
+
+			results.add(result);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Records the fitness of a candidate and the mean number of pieces it survived.
+	 */
+	private void record(int candidate, List<long[]> results) {
+		long[] lines = new long[results.size()];
+		double pieces = 0;
+
+		for (int i = 0; i < results.size(); i++) {
+			lines[i] = results.get(i)[0];
+			pieces += results.get(i)[1];
+		}
+
+		scores[candidate] = fitness.aggregate(lines);
+		survival[candidate] = pieces / results.size();
+	}
+
+	private static <T> Future<T> submit(ExecutorService executor, Callable<T> task) {
+		if (executor != null) {
+			return executor.submit(task);
+		}
+
+		FutureTask<T> future = new FutureTask<>(task);
+		future.run();
+		return future;
+	}
+
+	private static <T> T await(Future<T> result) {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while playing a generation.", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private void log(String format, Object... args) {
+		if (verbose) {
+			System.out.printf(format, args);
+		}
+	}
+
+	/**
+	 * Orders candidates from best to worst by score, then by the number of pieces survived.
+	 */
+	private int compare(int i, int j) {
+		int result = Double.compare(scores[j], scores[i]);
+		return result != 0 ? result : Double.compare(survival[j], survival[i]);
+	}
+
 	/**
 	 * Create a new generation based off of the success of the last generation.
 	 */
@@ -112,27 +636,30 @@ public class Evolution
 			idx[i] = i;
 		}
 
-		Arrays.sort(idx, (i, j) -> Double.compare(scores[j], scores[i]));
+		Arrays.sort(idx, this::compare);
 
-		System.out.printf("Generation %-2d - max = %d, med = %d, min = %d\n", generation, scores[idx[0]], scores[idx[populationSize / 2]], scores[idx[populationSize - 1]]);
-		System.out.printf("\n");
+		log("Generation %-2d - max = %.1f, med = %.1f, min = %.1f\n", generation, scores[idx[0]], scores[idx[populationSize / 2]], scores[idx[populationSize - 1]]);
+		log("\n");
 
+		best = scores[idx[0]];
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
 		Weights[] newPopulation = new Weights[populationSize];
 
 		for (int i = 0; i < populationSize; i++) {
 			if (i < populationSize * elitePercent) {
 				newPopulation[i] = population[idx[i]];
 			} else {
-				int w1 = (int) (Math.random() * (populationSize / 2));
-				int w2 = (int) (Math.random() * (populationSize / 2));
+				int w1 = random.nextInt(populationSize / 2);
+				int w2 = random.nextInt(populationSize / 2);
 
-				double[] child = new double[8];
+				double[] child = new double[ScoringSystem.FEATURES];
 
-				for (int j = 0; j < child.length; j++) {
-					child[j] = population[idx[Math.random() < .5 ? w1 : w2]].getWeights()[j];
+				for (int j = 0; j < genes; j++) {
+					child[j] = population[idx[random.nextDouble() < .5 ? w1 : w2]].getWeights()[j];
 
-					if (Math.random() < mutationRate) {
-						child[j] = Math.random() * 10 - 5;
+					if (random.nextDouble() < mutationRate) {
+						child[j] = random.nextDouble() * 10 - 5;
 					}
 				}
 
@@ -141,10 +668,24 @@ public class Evolution
 		}
 
 		population = newPopulation;
+		memo.retain(population);
 
 		current = 0;
 		generation++;
 
+		if (filename != null) {
+			save(filename, population);
+		}
+	}
+
+	/**
+	 * Writes a population to a file, one candidate per line, in the format read by the
+	 * constructor.
+	 *
+	 * @param filename   The file.
+	 * @param population The population.
+	 */
+	public static void save(String filename, Weights[] population) {
 		try (FileWriter writer = new FileWriter(filename)) {
 			for (Weights weights : population) {
 				writer.write(weights + "\n");
@@ -0,0 +1,248 @@
+/*
+ * This file is part of the tetris package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauri.harddrop.ai;
+
+import com.kauri.harddrop.Board;
+import com.kauri.harddrop.GameContext;
+import com.kauri.harddrop.Shape;
+import com.kauri.harddrop.Tetromino;
+import com.kauri.harddrop.sequence.PieceSequence;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A move evaluator which also considers the piece after the last known piece.
+ * <p>
+ * After the current piece (and the preview piece, if there is one) is placed, the board is scored
+ * by averaging the best placement of each piece that could come next. The likelihood of each piece
+ * is taken from the piece selector of the game, so under a {@link
+ * com.kauri.harddrop.sequence.ShufflePieceSelector ShufflePieceSelector} only the pieces still
+ * left in the bag are considered. If some piece that could come next cannot spawn on a board, the
+ * board scores negative infinity.
+ * <p>
+ * To keep the cost of a move bounded, only the <tt>expansionWidth</tt> placements with the best
+ * immediate score are expanded at each known ply, and the average for a board is computed once
+ * per move no matter how many placement orders lead to it.
+ * <p>
+ * This evaluator only looks ahead when it is asked about the current (and preview) pieces of the
+ * game. In every other case it behaves like a {@link MoveEvaluator}.
+ *
+ * @author Eric Fritz
+ */
+public class ExpectimaxEvaluator extends MoveEvaluator
+{
+	private GameContext context;
+	private int expansionWidth;
+
+	/**
+	 * Creates a new ExpectimaxEvaluator.
+	 *
+	 * @param scoring        The scoring system.
+	 * @param context        The game whose piece sequence is searched.
+	 * @param expansionWidth The number of placements expanded at each known ply.
+	 */
+	public ExpectimaxEvaluator(ScoringSystem scoring, GameContext context, int expansionWidth) {
+		super(scoring);
+		this.context = context;
+		this.expansionWidth = expansionWidth;
+	}
+
+	public int getExpansionWidth() {
+		return expansionWidth;
+	}
+
+	@Override
+	public boolean canPonder() {
+		// The pieces after the preview are read from the game, which is not safe off its thread.
+		return false;
+	}
+
+	@Override
+	public Move getNextMove(Board board, Tetromino current, int x1, int y1, Tetromino preview, int x2, int y2) {
+		PieceSequence sequence = context.getSequence();
+
+		if (sequence.peekCurrent().getShape() != current.getShape() || (preview != null && sequence.peekPreview() != preview)) {
+			return super.getNextMove(board, current, x1, y1, preview, x2, y2);
+		}
+
+		validateTable();
+
+		// Without a preview, the next piece is the one in the preview slot, which the player has
+		// not seen yet.
+
+		Chance chance = new Chance(sequence.peekCandidates(preview == null ? 1 : 2));
+
+		double best = Double.NEGATIVE_INFINITY;
+		Move move = null;
+
+		for (Placement p : getPlacements(board, current, x1, y1)) {
+			board.addPiece(p.piece, x1 + p.translation, p.target);
+
+			double score = preview == null ? chance.score(board) : getBestPreviewScore(board, preview, x2, y2, chance);
+
+			if (score > best) {
+				best = score;
+				move = new Move(score, p.rotation, p.translation);
+			}
+
+			board.removePiece(p.piece, x1 + p.translation, p.target);
+		}
+
+		if (move == null) {
+			// Every expanded placement loses to some next piece, so fall back to the search
+			// which only considers the known pieces.
+			return getBestMove(board, current, x1, y1, preview, x2, y2);
+		}
+
+		return move;
+	}
+
+	private double getBestPreviewScore(Board board, Tetromino preview, int x2, int y2, Chance chance) {
+		double best = Double.NEGATIVE_INFINITY;
+
+		for (Placement p : getPlacements(board, preview, x2, y2)) {
+			board.addPiece(p.piece, x2 + p.translation, p.target);
+			best = Math.max(best, chance.score(board));
+			board.removePiece(p.piece, x2 + p.translation, p.target);
+		}
+
+		return best;
+	}
+
+	/**
+	 * Lists the placements of a piece with the best immediate score.
+	 *
+	 * @param board The board.
+	 * @param piece The tetromino.
+	 * @param xPos  The x-position.
+	 * @param yPos  The y-position.
+	 *
+	 * @return At most <tt>expansionWidth</tt> placements, ordered from the best score to the worst.
+	 */
+	private List<Placement> getPlacements(Board board, Tetromino piece, int xPos, int yPos) {
+		List<Placement> placements = new ArrayList<>();
+
+		for (int i = 0; i < Tetromino.ROTATIONS; i++) {
+			Tetromino rotated = Tetromino.rotate(piece, i);
+
+			int min = getMaxTranslationDeltaMagnitude(board, rotated, xPos, yPos, -1);
+			int max = getMaxTranslationDeltaMagnitude(board, rotated, xPos, yPos, +1);
+
+			for (int translation = min; translation <= max; translation++) {
+				int target = board.dropHeight(rotated, xPos + translation, yPos);
+
+				board.addPiece(rotated, xPos + translation, target);
+				placements.add(new Placement(rotated, i, translation, target, score(board)));
+				board.removePiece(rotated, xPos + translation, target);
+			}
+		}
+
+		placements.sort((p1, p2) -> Double.compare(p2.score, p1.score));
+
+		return placements.size() > expansionWidth ? placements.subList(0, expansionWidth) : placements;
+	}
+
+	/**
+	 * A placement of a piece along with its immediate score.
+	 *
+	 * @author Eric Fritz
+	 */
+	private static class Placement
+	{
+		public Tetromino piece;
+		public int rotation;
+		public int translation;
+		public int target;
+		public double score;
+
+		public Placement(Tetromino piece, int rotation, int translation, int target, double score) {
+			this.piece = piece;
+			this.rotation = rotation;
+			this.translation = translation;
+			this.target = target;
+			this.score = score;
+		}
+	}
+
+	/**
+	 * The distribution of the next unseen piece. Scores of boards are remembered for the duration
+	 * of a single move, as the distribution changes once a piece is drawn.
+	 *
+	 * @author Eric Fritz
+	 */
+	private class Chance
+	{
+		private Tetromino[] pieces;
+		private double[] probabilities;
+		private Map<Long, Double> memo = new HashMap<>();
+
+		public Chance(List<Tetromino> candidates) {
+			int[] counts = new int[Shape.values().length];
+
+			for (Tetromino candidate : candidates) {
+				counts[candidate.getShape().ordinal()]++;
+			}
+
+			List<Tetromino> distinct = new ArrayList<>();
+
+			for (Tetromino candidate : candidates) {
+				if (!distinct.contains(candidate)) {
+					distinct.add(candidate);
+				}
+			}
+
+			pieces = distinct.toArray(new Tetromino[distinct.size()]);
+			probabilities = new double[pieces.length];
+
+			for (int i = 0; i < pieces.length; i++) {
+				probabilities[i] = counts[pieces[i].getShape().ordinal()] / (double) candidates.size();
+			}
+		}
+
+		public double score(Board board) {
+			Double cached = memo.get(board.getHash());
+
+			if (cached != null) {
+				return cached;
+			}
+
+			double score = 0;
+
+			for (int i = 0; i < pieces.length; i++) {
+				int x = board.getSpawnX(pieces[i]);
+				int y = board.getSpawnY(pieces[i]);
+
+				if (!board.canMove(pieces[i], x, y)) {
+					score = Double.NEGATIVE_INFINITY;
+					break;
+				}
+
+				score += probabilities[i] * getBestReply(board, pieces[i], x, y).getScore();
+			}
+
+			memo.put(board.getHash(), score);
+			return score;
+		}
+	}
+}
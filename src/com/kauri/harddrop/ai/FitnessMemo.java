@@ -0,0 +1,107 @@
+/*
+ * This file is part of the tetris package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kauri.harddrop.ai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The results of the games played by each candidate, so that the candidates which are carried
+ * into the next generation unchanged need not replay them. A result is the number of lines cleared
+ * and the number of pieces placed. Results are only valid for the board width and piece limit they
+ * were played with, so the memo is cleared when either changes.
+ *
+ * @author Eric Fritz
+ */
+class FitnessMemo
+{
+	private int width;
+	private long maxPieces;
+
+	private Map<Weights, Map<Long, long[]>> seeded = new HashMap<>();
+	private Map<Weights, List<long[]>> unseeded = new HashMap<>();
+
+	/**
+	 * Clears the memo if its results were played on a different board or with a different limit.
+	 *
+	 * @param width     The width of the board.
+	 * @param maxPieces The number of pieces after which a game is stopped, or zero for no limit.
+	 */
+	public void validate(int width, long maxPieces) {
+		if (this.width != width || this.maxPieces != maxPieces) {
+			this.width = width;
+			this.maxPieces = maxPieces;
+
+			seeded.clear();
+			unseeded.clear();
+		}
+	}
+
+	/**
+	 * Retrieves the result of the game played with the given weights on the given seed.
+	 *
+	 * @param weights The weights.
+	 * @param seed    The seed of the piece sequence.
+	 *
+	 * @return The result, or <tt>null</tt> if no such game has been played.
+	 */
+	public long[] get(Weights weights, long seed) {
+		Map<Long, long[]> results = seeded.get(weights);
+		return results == null ? null : results.get(seed);
+	}
+
+	public void put(Weights weights, long seed, long[] result) {
+		seeded.computeIfAbsent(weights, (w) -> new HashMap<>()).put(seed, result);
+	}
+
+	/**
+	 * Adds the result of an unseeded game to the results played with the given weights.
+	 *
+	 * @param weights The weights.
+	 * @param result  The result.
+	 *
+	 * @return Every result of an unseeded game played with the weights.
+	 */
+	public List<long[]> add(Weights weights, long[] result) {
+		List<long[]> results = unseeded.computeIfAbsent(weights, (w) -> new ArrayList<>());
+		results.add(result);
+		return results;
+	}
+
+	/**
+	 * Discards the results of every candidate which is not in the given population.
+	 *
+	 * @param population The population.
+	 */
+	public void retain(Weights[] population) {
+		Set<Weights> candidates = new HashSet<>(Arrays.asList(population));
+
+		seeded.keySet().retainAll(candidates);
+		unseeded.keySet().retainAll(candidates);
+	}
+}
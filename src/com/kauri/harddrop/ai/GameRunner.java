@@ -0,0 +1,45 @@
+/*
+ * This file is part of the tetris package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kauri.harddrop.ai;
+
+import java.util.concurrent.Future;
+
+/**
+ * Plays the games with which {@link Evolution} scores its candidates.
+ *
+ * @author Eric Fritz
+ */
+public interface GameRunner
+{
+	/**
+	 * Starts a game on a new board.
+	 *
+	 * @param weights   The weights with which each move is chosen.
+	 * @param seed      The seed of the piece sequence, or <tt>null</tt> for a random sequence.
+	 * @param width     The width of the board.
+	 * @param maxPieces The number of pieces after which the game is stopped, or zero for no limit.
+	 *
+	 * @return The number of lines cleared and the number of pieces placed.
+	 */
+	public Future<long[]> play(Weights weights, Long seed, int width, long maxPieces);
+}
@@ -0,0 +1,244 @@
+/*
+ * This file is part of the tetris package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kauri.harddrop.ai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Evolves several populations, or islands, at once. Each island plays its own generations at its
+ * own pace, one generation per task, so an executor may be shared by more islands than it has
+ * threads. Every few generations, an island sends copies of its best candidates to the next island
+ * in a ring. Migrants are queued without blocking and join the receiving island before the next
+ * generation it plays, so the islands never wait on each other.
+ *
+ * @author Eric Fritz
+ */
+public class IslandModel
+{
+	private Evolution[] islands;
+	private List<Queue<Weights>> inboxes = new ArrayList<>();
+
+	private int interval = 5;
+	private int migrants = 1;
+	private boolean verbose = true;
+
+	/**
+	 * Creates a new IslandModel. The populations of the islands are random and are not saved.
+	 *
+	 * @param islands        The number of islands.
+	 * @param populationSize The number of candidates on each island.
+	 * @param genes          The number of features whose weights are evolved.
+	 */
+	public IslandModel(int islands, int populationSize, int genes) {
+		this.islands = new Evolution[islands];
+
+		for (int i = 0; i < islands; i++) {
+			this.islands[i] = new Evolution(new ScoringSystem(), populationSize, genes, null);
+			this.islands[i].setVerbose(false);
+
+			inboxes.add(new ConcurrentLinkedQueue<>());
+		}
+	}
+
+	public Evolution[] getIslands() {
+		return islands;
+	}
+
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Sets the number of generations an island plays between sending migrants.
+	 *
+	 * @param interval The migration interval.
+	 */
+	public void setInterval(int interval) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("Migration interval must be at least one generation.");
+		}
+
+		this.interval = interval;
+	}
+
+	public int getMigrants() {
+		return migrants;
+	}
+
+	/**
+	 * Sets the number of candidates sent by an island at each migration. An island never sends
+	 * more candidates than it has elites.
+	 *
+	 * @param migrants The number of migrants.
+	 */
+	public void setMigrants(int migrants) {
+		if (migrants < 0) {
+			throw new IllegalArgumentException("Number of migrants cannot be negative.");
+		}
+
+		this.migrants = migrants;
+	}
+
+	public boolean isVerbose() {
+		return verbose;
+	}
+
+	/**
+	 * Sets whether the best score of each island is printed after each of its generations. The
+	 * islands themselves never print the scores of their candidates.
+	 *
+	 * @param verbose <tt>true</tt> to print the progress of each island.
+	 */
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/**
+	 * Plays the given number of generations on every island. The games of an island are played on
+	 * the thread running its generation, as the islands already keep the executor busy.
+	 *
+	 * @param executor    The executor on which the generations are played.
+	 * @param generations The number of generations played by each island.
+	 * @param width       The width of the board.
+	 * @param minPieces   The number of pieces played in the first round of a race, or zero to play
+	 *                    every game to the piece limit without racing.
+	 * @param maxPieces   The number of pieces after which a game is stopped, or zero for no limit.
+	 */
+	public void play(ExecutorService executor, int generations, int width, long minPieces, long maxPieces) {
+		CountDownLatch done = new CountDownLatch(islands.length);
+		AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+		for (int i = 0; i < islands.length; i++) {
+			executor.execute(new Island(i, executor, generations, width, minPieces, maxPieces, done, failure));
+		}
+
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while playing a generation.", e);
+		}
+
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+	}
+
+	/**
+	 * Writes the populations of every island to a file. The best candidate of each island comes
+	 * first, followed by the second best of each island, and so on.
+	 *
+	 * @param filename The file.
+	 */
+	public void save(String filename) {
+		List<Weights> population = new ArrayList<>();
+
+		for (int i = 0; i < islands[0].getPopulationSize(); i++) {
+			for (Evolution island : islands) {
+				population.add(island.population[i]);
+			}
+		}
+
+		Evolution.save(filename, population.toArray(new Weights[0]));
+	}
+
+	/**
+	 * The task which plays the next generation of an island, and then resubmits itself until the
+	 * island has played all of its generations.
+	 *
+	 * @author Eric Fritz
+	 */
+	private class Island implements Runnable
+	{
+		private int index;
+		private ExecutorService executor;
+		private int generations;
+		private int width;
+		private long minPieces;
+		private long maxPieces;
+		private CountDownLatch done;
+		private AtomicReference<RuntimeException> failure;
+
+		private int played = 0;
+
+		public Island(int index, ExecutorService executor, int generations, int width, long minPieces, long maxPieces, CountDownLatch done, AtomicReference<RuntimeException> failure) {
+			this.index = index;
+			this.executor = executor;
+			this.generations = generations;
+			this.width = width;
+			this.minPieces = minPieces;
+			this.maxPieces = maxPieces;
+			this.done = done;
+			this.failure = failure;
+		}
+
+		@Override
+		public void run() {
+			Evolution island = islands[index];
+
+			try {
+				if (played < generations && failure.get() == null) {
+					List<Weights> arrivals = new ArrayList<>();
+
+					for (Weights weights = inboxes.get(index).poll(); weights != null; weights = inboxes.get(index).poll()) {
+						arrivals.add(weights);
+					}
+
+					island.immigrate(arrivals.toArray(new Weights[0]));
+
+					if (minPieces > 0) {
+						island.raceGeneration(null, width, minPieces, maxPieces);
+					} else {
+						island.playGeneration((ExecutorService) null, width, maxPieces);
+					}
+
+					played++;
+
+					if (verbose) {
+						System.out.printf("Island %-2d - Generation %-2d - max = %.1f\n", index + 1, played, island.getBestScore());
+					}
+
+					if (islands.length > 1 && played % interval == 0) {
+						inboxes.get((index + 1) % islands.length).addAll(Arrays.asList(island.getBest(migrants)));
+					}
+
+					if (played < generations) {
+						executor.execute(this);
+						return;
+					}
+				}
+			} catch (RuntimeException e) {
+				failure.compareAndSet(null, e);
+			}
+
+			done.countDown();
+		}
+	}
+}
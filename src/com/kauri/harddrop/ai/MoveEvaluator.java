@@ -23,6 +23,7 @@ package com.kauri.harddrop.ai;
 
 import com.kauri.harddrop.Board;
 import com.kauri.harddrop.Tetromino;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author Eric Fritz
@@ -30,16 +31,102 @@ import com.kauri.harddrop.Tetromino;
 public class MoveEvaluator
 {
 	private ScoringSystem scoring;
+	private TranspositionTable table;
+	private Weights tableWeights;
+
+	private boolean pruning = false;
+	private final LongAdder expanded = new LongAdder();
+	private final LongAdder pruned = new LongAdder();
 
 	public MoveEvaluator(ScoringSystem scoring) {
 		this.scoring = scoring;
 	}
 
+	public ScoringSystem getScoring() {
+		return scoring;
+	}
+
+	public TranspositionTable getTranspositionTable() {
+		return table;
+	}
+
+	/**
+	 * Sets the table used to cache the score of boards and the best reply to a preview piece.
+	 * Caching is disabled if the table is <tt>null</tt>.
+	 *
+	 * @param table The transposition table.
+	 */
+	public void setTranspositionTable(TranspositionTable table) {
+		this.table = table;
+		this.tableWeights = null;
+	}
+
+	public boolean isPruning() {
+		return pruning;
+	}
+
+	/**
+	 * Sets whether placements of the current piece are skipped when no reply to the preview piece
+	 * could score better than the best placement found so far. The chosen move is unchanged.
+	 *
+	 * @param pruning <tt>true</tt> to enable pruning.
+	 */
+	public void setPruning(boolean pruning) {
+		this.pruning = pruning;
+	}
+
+	/**
+	 * @return The number of placements of the current piece whose replies have been searched.
+	 */
+	public long getExpandedNodes() {
+		return expanded.sum();
+	}
+
+	/**
+	 * @return The number of placements of the current piece skipped by pruning.
+	 */
+	public long getPrunedNodes() {
+		return pruned.sum();
+	}
+
+	public void resetStatistics() {
+		expanded.reset();
+		pruned.reset();
+	}
+
+	/**
+	 * Determines if moves may be computed ahead of time on another thread. The result of such a
+	 * computation must depend only on the arguments to {@link MoveEvaluator#getNextMove}.
+	 *
+	 * @return <tt>true</tt> if this evaluator may be used to ponder the next move.
+	 */
+	public boolean canPonder() {
+		return true;
+	}
+
 	public Move getNextMove(Board board, Tetromino current, int x1, int y1) {
 		return getNextMove(board, current, x1, y1, null, 0, 0);
 	}
 
 	public Move getNextMove(Board board, Tetromino current, int x1, int y1, Tetromino preview, int x2, int y2) {
+		validateTable();
+		return getBestMove(board, current, x1, y1, preview, x2, y2);
+	}
+
+	/**
+	 * Searches every placement of the current piece, and of the preview piece if it is non-null.
+	 * Subclasses which override {@link MoveEvaluator#getNextMove} still reach this search for the
+	 * replies to the preview piece.
+	 */
+	final Move getBestMove(Board board, Tetromino current, int x1, int y1, Tetromino preview, int x2, int y2) {
+		if (preview == null) {
+			return getBestLeafMove(board, current, x1, y1);
+		}
+
+		if (pruning) {
+			return getPrunedBestMove(board, current, x1, y1, preview, x2, y2);
+		}
+
 		double best = Double.NEGATIVE_INFINITY;
 		Move move = new Move(best, 0, 0);
 
@@ -68,7 +155,7 @@ public class MoveEvaluator
 			int target = board.dropHeight(current, x1 + translation, y1);
 			board.addPiece(current, x1 + translation, target);
 
-			double score = preview == null ? scoring.score(board) : getNextMove(board, preview, x2, y2).getScore();
+			double score = getBestReply(board, preview, x2, y2).getScore();
 
 			if (score > best) {
 				best = score;
@@ -81,7 +168,176 @@ public class MoveEvaluator
 		return move;
 	}
 
-	private int getMaxTranslationDeltaMagnitude(Board board, Tetromino current, int xPos, int yPos, int step) {
+	/**
+	 * Searches every placement of a piece with no preview. The placements are scored together by
+	 * {@link ScoringSystem#score(Board, Tetromino[], int[], int[], int, double[])}, which is cheaper
+	 * than looking each board up in the transposition table.
+	 */
+	private Move getBestLeafMove(Board board, Tetromino current, int x1, int y1) {
+		int count = 0;
+		Tetromino[] pieces = new Tetromino[Tetromino.ROTATIONS * board.getWidth()];
+		int[] rotations = new int[Tetromino.ROTATIONS * board.getWidth()];
+		int[] translations = new int[Tetromino.ROTATIONS * board.getWidth()];
+		int[] xs = new int[Tetromino.ROTATIONS * board.getWidth()];
+		int[] ys = new int[Tetromino.ROTATIONS * board.getWidth()];
+
+		for (int i = 0; i < Tetromino.ROTATIONS; i++) {
+			int min = getMaxTranslationDeltaMagnitude(board, current, x1, y1, -1);
+			int max = getMaxTranslationDeltaMagnitude(board, current, x1, y1, +1);
+
+			for (int translation = min; translation <= max; translation++) {
+				pieces[count] = current;
+				rotations[count] = i;
+				translations[count] = translation;
+				xs[count] = x1 + translation;
+				ys[count] = board.dropHeight(current, x1 + translation, y1);
+				count++;
+			}
+
+			current = Tetromino.rotateClockwise(current);
+		}
+
+		double[] scores = new double[count];
+		scoring.score(board, pieces, xs, ys, count, scores);
+
+		double best = Double.NEGATIVE_INFINITY;
+		Move move = new Move(best, 0, 0);
+
+		for (int i = 0; i < count; i++) {
+			if (scores[i] > best) {
+				best = scores[i];
+				move = new Move(best, rotations[i], translations[i]);
+			}
+		}
+
+		return move;
+	}
+
+	/**
+	 * Searches the placements of the current piece in two stages. Each placement is first given
+	 * its static score, and an upper bound on the score of any reply to the preview piece. The
+	 * replies are then searched in order of decreasing static score, skipping the placements whose
+	 * bound cannot beat the best score found so far. Ties are broken in favour of the placement
+	 * {@link MoveEvaluator#getBestMove} would have reached first, so both choose the same move.
+	 */
+	private Move getPrunedBestMove(Board board, Tetromino current, int x1, int y1, Tetromino preview, int x2, int y2) {
+		int count = 0;
+		int[] rotations = new int[Tetromino.ROTATIONS * board.getWidth()];
+		int[] translations = new int[Tetromino.ROTATIONS * board.getWidth()];
+		int[] targets = new int[Tetromino.ROTATIONS * board.getWidth()];
+		double[] scores = new double[Tetromino.ROTATIONS * board.getWidth()];
+		double[] bounds = new double[Tetromino.ROTATIONS * board.getWidth()];
+
+		for (int i = 0; i < Tetromino.ROTATIONS; i++) {
+			Tetromino piece = Tetromino.rotate(current, i);
+
+			int min = getMaxTranslationDeltaMagnitude(board, piece, x1, y1, -1);
+			int max = getMaxTranslationDeltaMagnitude(board, piece, x1, y1, +1);
+
+			for (int translation = min; translation <= max; translation++) {
+				int target = board.dropHeight(piece, x1 + translation, y1);
+				board.addPiece(piece, x1 + translation, target);
+
+				rotations[count] = i;
+				translations[count] = translation;
+				targets[count] = target;
+				scores[count] = score(board);
+				bounds[count] = scores[count] + scoring.bound(board, preview.getSize());
+				count++;
+
+				board.removePiece(piece, x1 + translation, target);
+			}
+		}
+
+		// Order the placements by static score, keeping the search order among equal scores.
+
+		int[] order = new int[count];
+
+		for (int i = 0; i < count; i++) {
+			int j = i;
+
+			while (j > 0 && scores[order[j - 1]] < scores[i]) {
+				order[j] = order[j - 1];
+				j--;
+			}
+
+			order[j] = i;
+		}
+
+		double best = Double.NEGATIVE_INFINITY;
+		int index = -1;
+
+		for (int k = 0; k < count; k++) {
+			int i = order[k];
+
+			// Leave some slack for rounding, as the bound is summed in a different order.
+			if (bounds[i] + 1e-9 * (1 + Math.abs(best)) < best) {
+				pruned.increment();
+				continue;
+			}
+
+			Tetromino piece = Tetromino.rotate(current, rotations[i]);
+
+			board.addPiece(piece, x1 + translations[i], targets[i]);
+			double score = getBestReply(board, preview, x2, y2).getScore();
+			board.removePiece(piece, x1 + translations[i], targets[i]);
+
+			expanded.increment();
+
+			if (score > best || (score == best && i < index)) {
+				best = score;
+				index = i;
+			}
+		}
+
+		if (index < 0) {
+			return new Move(Double.NEGATIVE_INFINITY, 0, 0);
+		}
+
+		return new Move(best, rotations[index], translations[index]);
+	}
+
+	void validateTable() {
+		if (table != null && tableWeights != scoring.getWeights()) {
+			// Cached scores are only valid for the weights which produced them.
+
+			table.clear();
+			tableWeights = scoring.getWeights();
+		}
+	}
+
+	double score(Board board) {
+		if (table == null) {
+			return scoring.score(board);
+		}
+
+		double score = table.getScore(TranspositionTable.key(board), 0);
+
+		if (Double.isNaN(score)) {
+			score = scoring.score(board);
+			table.putScore(TranspositionTable.key(board), 0, score);
+		}
+
+		return score;
+	}
+
+	Move getBestReply(Board board, Tetromino preview, int x2, int y2) {
+		if (table == null) {
+			return getBestMove(board, preview, x2, y2, null, 0, 0);
+		}
+
+		long key = TranspositionTable.key(TranspositionTable.key(board), preview, x2, y2);
+		Move move = table.getMove(key, 1);
+
+		if (move == null) {
+			move = getBestMove(board, preview, x2, y2, null, 0, 0);
+			table.putMove(key, 1, move);
+		}
+
+		return move;
+	}
+
+	int getMaxTranslationDeltaMagnitude(Board board, Tetromino current, int xPos, int yPos, int step) {
 		int delta = 0;
 		while (board.canMove(current, xPos + delta + step, yPos)) {
 			delta += step;
@@ -0,0 +1,165 @@
+/*
+ * This file is part of the tetris package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauri.harddrop.ai;
+
+import com.kauri.harddrop.Board;
+import com.kauri.harddrop.Tetromino;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A move evaluator which splits the placements of the current piece across a fork-join pool.
+ * Each task searches the preview ply on its own copy of the board. The scores are then reduced in
+ * the same order as the sequential search, so both evaluators choose the same move.
+ *
+ * @author Eric Fritz
+ */
+public class ParallelMoveEvaluator extends MoveEvaluator
+{
+	/**
+	 * The number of placements searched by a single task.
+	 */
+	private static final int THRESHOLD = 2;
+
+	private ForkJoinPool pool;
+
+	public ParallelMoveEvaluator(ScoringSystem scoring) {
+		this(scoring, ForkJoinPool.commonPool());
+	}
+
+	public ParallelMoveEvaluator(ScoringSystem scoring, ForkJoinPool pool) {
+		super(scoring);
+		this.pool = pool;
+	}
+
+	@Override
+	public Move getNextMove(Board board, Tetromino current, int x1, int y1, Tetromino preview, int x2, int y2) {
+		if (preview == null) {
+			// A single ply is too little work to be worth splitting.
+			return super.getNextMove(board, current, x1, y1, preview, x2, y2);
+		}
+
+		if (isPruning()) {
+			// Pruning depends on the best score found so far, so placements are searched in turn.
+			return super.getNextMove(board, current, x1, y1, preview, x2, y2);
+		}
+
+		validateTable();
+
+		int count = 0;
+		int[] rotations = new int[Tetromino.ROTATIONS * board.getWidth()];
+		int[] translations = new int[Tetromino.ROTATIONS * board.getWidth()];
+
+		for (int i = 0; i < Tetromino.ROTATIONS; i++) {
+			Tetromino piece = Tetromino.rotate(current, i);
+
+			int min = getMaxTranslationDeltaMagnitude(board, piece, x1, y1, -1);
+			int max = getMaxTranslationDeltaMagnitude(board, piece, x1, y1, +1);
+
+			for (int translation = min; translation <= max; translation++) {
+				rotations[count] = i;
+				translations[count] = translation;
+				count++;
+			}
+		}
+
+		double[] scores = new double[count];
+		pool.invoke(new SearchTask(board, current, x1, y1, preview, x2, y2, rotations, translations, scores, 0, count));
+
+		double best = Double.NEGATIVE_INFINITY;
+		Move move = new Move(best, 0, 0);
+
+		for (int i = 0; i < count; i++) {
+			if (scores[i] > best) {
+				best = scores[i];
+				move = new Move(best, rotations[i], translations[i]);
+			}
+		}
+
+		return move;
+	}
+
+	/**
+	 * A task which scores a range of placements of the current piece.
+	 *
+	 * @author Eric Fritz
+	 */
+	private class SearchTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private Board board;
+		private Tetromino current;
+		private int x1;
+		private int y1;
+		private Tetromino preview;
+		private int x2;
+		private int y2;
+		private int[] rotations;
+		private int[] translations;
+		private double[] scores;
+		private int lo;
+		private int hi;
+
+		public SearchTask(Board board, Tetromino current, int x1, int y1, Tetromino preview, int x2, int y2, int[] rotations, int[] translations, double[] scores, int lo, int hi) {
+			this.board = board;
+			this.current = current;
+			this.x1 = x1;
+			this.y1 = y1;
+			this.preview = preview;
+			this.x2 = x2;
+			this.y2 = y2;
+			this.rotations = rotations;
+			this.translations = translations;
+			this.scores = scores;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo > THRESHOLD) {
+				int mid = (lo + hi) >>> 1;
+
+				invokeAll(
+					new SearchTask(board, current, x1, y1, preview, x2, y2, rotations, translations, scores, lo, mid),
+					new SearchTask(board, current, x1, y1, preview, x2, y2, rotations, translations, scores, mid, hi)
+				);
+
+				return;
+			}
+
+			Board copy = board.tryClone(null);
+
+			for (int i = lo; i < hi; i++) {
+				Tetromino piece = Tetromino.rotate(current, rotations[i]);
+
+				int target = copy.dropHeight(piece, x1 + translations[i], y1);
+				copy.addPiece(piece, x1 + translations[i], target);
+
+				scores[i] = getBestReply(copy, preview, x2, y2).getScore();
+
+				copy.removePiece(piece, x1 + translations[i], target);
+			}
+		}
+	}
+}
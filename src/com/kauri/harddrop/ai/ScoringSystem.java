@@ -22,14 +22,30 @@
 package com.kauri.harddrop.ai;
 
 import com.kauri.harddrop.Board;
-import com.kauri.harddrop.Shape;
+import com.kauri.harddrop.Tetromino;
+import java.util.Arrays;
 
 /**
  * @author Eric Fritz
  */
 public class ScoringSystem
 {
+	/**
+	 * The number of features extracted from a board. In order, these are the sum of the column
+	 * heights, the height of the highest column, the difference between the highest and lowest
+	 * columns, the average column height, the number of holes, the depth of the wells, the number
+	 * of blockades, and the number of full rows. A weight is given to each feature.
+	 */
+	public static final int FEATURES = 8;
+
+	/**
+	 * The buffer into which a single board's features are extracted. Boards are scored from many
+	 * threads at once, so each thread has its own.
+	 */
+	private static final ThreadLocal<double[]> buffers = ThreadLocal.withInitial(() -> new double[FEATURES]);
+
 	private Weights weights;
+	private volatile Scorer scorer;
 
 	public Weights getWeights() {
 		return weights;
@@ -39,110 +55,583 @@ public class ScoringSystem
 		this.weights = weights;
 	}
 
+	/**
+	 * Scores a board which was reached by clearing the given number of rows in earlier placements.
+	 *
+	 * @param board  The board.
+	 * @param clears The number of rows already cleared.
+	 *
+	 * @return The score.
+	 */
+	public double score(Board board, int clears) {
+		return score(board) + weights.getWeights()[7] * clears;
+	}
+
 	public double score(Board board) {
-		int clears = 0;
-		for (int row = board.getHeight() - 1; row >= 0; row--) {
-			board = board.tryClone(null);
+		Scorer scorer = getScorer(board.getWidth());
 
-			if (board.isRowFull(row)) {
-				clears++;
-				board.removeRow(row);
-			}
+		double[] features = buffers.get();
+		extract(board, features, 0, scorer);
+
+		return scorer.score(features, 0);
+	}
+
+	/**
+	 * Scores a feature vector with the current weights.
+	 *
+	 * @param features The buffer holding the features.
+	 * @param offset   The index of the first feature in the buffer.
+	 *
+	 * @return The score.
+	 */
+	public double score(double[] features, int offset) {
+		return score(features, offset, weights);
+	}
+
+	/**
+	 * Scores a feature vector with the given weights, which is the dot product of the two. The
+	 * same features may be scored with many sets of weights.
+	 *
+	 * @param features The buffer holding the features.
+	 * @param offset   The index of the first feature in the buffer.
+	 * @param weights  The weights.
+	 *
+	 * @return The score.
+	 */
+	public static double score(double[] features, int offset, Weights weights) {
+		double[] w = weights.getWeights();
+		double score = 0;
+
+		for (int i = 0; i < FEATURES; i++) {
+			score += w[i] * features[offset + i];
 		}
 
-		int[] heights = getHeights(board);
+		return score;
+	}
+
+	/**
+	 * Extracts the features of a board into a buffer.
+	 *
+	 * @param board    The board.
+	 * @param features The buffer which receives the features.
+	 * @param offset   The index in the buffer of the first feature.
+	 */
+	public static void extract(Board board, double[] features, int offset) {
+		extract(board, features, offset, null);
+	}
+
+	/**
+	 * Extracts the features of a board into a buffer. The features given no weight by the scorer
+	 * are left as zero.
+	 */
+	private static void extract(Board board, double[] features, int offset, Scorer scorer) {
+		// Rather than removing full rows from a copy of the board, each column is read as it
+		// would be after the rows were cleared, so the board is never copied.
+
+		long full = board.getFullRows();
+		int clears = Long.bitCount(full);
+		int width = board.getWidth();
 
 		int sumHeight = 0;
-		int minHeight = heights[0];
-		int maxHeight = heights[0];
+		int minHeight = Integer.MAX_VALUE;
+		int maxHeight = Integer.MIN_VALUE;
 
 		int holes = 0;
 		int wells = 0;
 		int blockades = 0;
 
-		for (int col = 0; col < heights.length; col++) {
-			sumHeight = sumHeight + heights[col];
-			minHeight = Math.min(heights[col], minHeight);
-			maxHeight = Math.max(heights[col], maxHeight);
-
-			// To count the number of holes, count the empty blocks from the bottom to the top
-			// of the column. To count the number of blockades, count the non-empty blocks from
-			// first hole to the top of the column.
-
-			int h = 0;
-			for (int i = 0; i <= heights[col]; i++) {
-				if (board.getShapeAt(i, col) == Shape.NoShape) {
-					h++;
-				} else if (h > 0) {
-					blockades++;
-				}
+		int h1 = Integer.MAX_VALUE;
+		long next = board.getColumnMask(0, full);
+
+		for (int col = 0; col < width; col++) {
+			long column = next;
+			int height = Board.heightOf(column);
+
+			if (col < width - 1) {
+				next = board.getColumnMask(col + 1, full);
+			}
+
+			sumHeight = sumHeight + height;
+			minHeight = Math.min(height, minHeight);
+			maxHeight = Math.max(height, maxHeight);
+
+			// The number of holes (empty blocks below the top of the column) and blockades
+			// (non-empty blocks above the first hole) are read directly from the column mask.
+
+			if (scorer == null || scorer.holes) {
+				holes += Board.holesOf(column);
 			}
 
-			holes += h;
+			if (scorer == null || scorer.blockades) {
+				blockades += Board.blockadesOf(column);
+			}
 
 			// A well exists if a column's height is at least minWellDepth less than the columns
 			// surrounding it. We compare each column's height with that of both its neighbors. The
 			// side columns will only be compared with only one neighbor, as we consider the borders
 			// of the board itself as infinite-height columns.
 
-			int l = heights.length - 1;
-			int h1 = col == 0 ? Integer.MAX_VALUE : heights[col - 1];
-			int h2 = col == l ? Integer.MAX_VALUE : heights[col + 1];
+			int h2 = col == width - 1 ? Integer.MAX_VALUE : Board.heightOf(next);
 
-			if (heights[col] < h1 && heights[col] < h2) {
-				int depth = Math.min(h1, h2) - heights[col];
+			if (scorer == null || scorer.wells) {
+				wells += wellDepth(h1, height, h2);
+			}
 
-				if (depth >= 3) {
-					wells += depth;
-				}
+			h1 = height;
+		}
+
+		features(features, offset, width, sumHeight, minHeight, maxHeight, holes, wells, blockades, clears);
+	}
+
+	/**
+	 * Scores each of the given placements of a piece, as if the piece were added to the board and
+	 * the board scored by {@link ScoringSystem#score(Board)}.
+	 *
+	 * @param board  The board.
+	 * @param pieces The rotated piece of each placement.
+	 * @param xs     The x-position of each placement.
+	 * @param ys     The y-position of each placement.
+	 * @param count  The number of placements.
+	 * @param scores The array which receives the score of each placement.
+	 */
+	public void score(Board board, Tetromino[] pieces, int[] xs, int[] ys, int count, double[] scores) {
+		Scorer scorer = getScorer(board.getWidth());
+
+		double[] features = new double[count * FEATURES];
+		extract(board, pieces, xs, ys, count, features);
+
+		for (int i = 0; i < count; i++) {
+			scores[i] = scorer.score(features, i * FEATURES);
+		}
+	}
+
+	/**
+	 * Extracts the features of each of the given placements of a piece, as if the piece were added
+	 * to the board and its features extracted by {@link ScoringSystem#extract(Board, double[], int)}.
+	 * The features of the board are computed once, and the features of each placement are derived
+	 * from the columns the piece covers and their neighbors. A placement which completes a row is
+	 * extracted in full.
+	 *
+	 * @param board    The board.
+	 * @param pieces   The rotated piece of each placement.
+	 * @param xs       The x-position of each placement.
+	 * @param ys       The y-position of each placement.
+	 * @param count    The number of placements.
+	 * @param features The buffer which receives the features of each placement in turn.
+	 */
+	public static void extract(Board board, Tetromino[] pieces, int[] xs, int[] ys, int count, double[] features) {
+		if (board.getFullRows() != 0) {
+			// The full rows are cleared when each placement is scored, which moves every column.
+
+			for (int i = 0; i < count; i++) {
+				extract(board, pieces[i], xs[i], ys[i], features, i * FEATURES);
 			}
+
+			return;
 		}
 
-		double score = 0;
-		score += weights.getWeights()[0] * sumHeight;
-		score += weights.getWeights()[1] * maxHeight;
-		score += weights.getWeights()[2] * (maxHeight - minHeight);
-		score += weights.getWeights()[3] * (sumHeight / (double) heights.length);
-		score += weights.getWeights()[4] * holes;
-		score += weights.getWeights()[5] * wells;
-		score += weights.getWeights()[6] * blockades;
-		score += weights.getWeights()[7] * clears;
+		ColumnFeatures columns = new ColumnFeatures(board);
 
-		return score;
+		for (int i = 0; i < count; i++) {
+			columns.extract(pieces[i], xs[i], ys[i], features, i * FEATURES);
+		}
+	}
+
+	private static void extract(Board board, Tetromino piece, int xPos, int yPos, double[] features, int offset) {
+		board.addPiece(piece, xPos, yPos);
+		extract(board, features, offset);
+		board.removePiece(piece, xPos, yPos);
+	}
+
+	/**
+	 * Retrieves the scorer compiled from the current weights for boards of the given width. The
+	 * scorer is compiled again only when the weights or the width change.
+	 */
+	private Scorer getScorer(int width) {
+		Scorer scorer = this.scorer;
+
+		if (scorer == null || scorer.weights != weights || scorer.width != width) {
+			scorer = new Scorer(weights, width);
+			this.scorer = scorer;
+		}
+
+		return scorer;
+	}
+
+	private static void features(double[] features, int offset, int width, int sumHeight, int minHeight, int maxHeight, int holes, int wells, int blockades, int clears) {
+		features[offset + 0] = sumHeight;
+		features[offset + 1] = maxHeight;
+		features[offset + 2] = maxHeight - minHeight;
+		features[offset + 3] = sumHeight / (double) width;
+		features[offset + 4] = holes;
+		features[offset + 5] = wells;
+		features[offset + 6] = blockades;
+		features[offset + 7] = clears;
+	}
+
+	private static int wellDepth(int col, int[] heights) {
+		int h1 = col == 0 ? Integer.MAX_VALUE : heights[col - 1];
+		int h2 = col == heights.length - 1 ? Integer.MAX_VALUE : heights[col + 1];
+
+		return wellDepth(h1, heights[col], h2);
+	}
+
+	/**
+	 * Determines the depth of a well, which exists if a column's height is at least three less
+	 * than the heights of the columns on either side of it.
+	 *
+	 * @param h1     The height of the column on the left.
+	 * @param height The height of the column.
+	 * @param h2     The height of the column on the right.
+	 *
+	 * @return The depth of the well, or zero if there is no well.
+	 */
+	private static int wellDepth(int h1, int height, int h2) {
+		if (height < h1 && height < h2 && Math.min(h1, h2) - height >= 3) {
+			return Math.min(h1, h2) - height;
+		}
+
+		return 0;
 	}
 
 	/**
-	 * Retrieves an array of each column's height.
+	 * Computes an upper bound on the amount by which the score of a board may increase when a
+	 * piece is dropped straight down onto it from its spawn position. Each feature is given an
+	 * interval of the values by which it may change, and the end of the interval favoured by the
+	 * feature's weight is taken.
 	 *
 	 * @param board The board.
+	 * @param cells The number of blocks in the dropped piece.
 	 *
-	 * @return An array of heights.
+	 * @return The largest possible increase in score, which may be infinite.
 	 */
-	private int[] getHeights(Board board) {
-		int[] heights = new int[board.getWidth()];
+	public double bound(Board board, int cells) {
+		long full = board.getFullRows();
+		int width = board.getWidth();
+		int height = board.getHeight();
+
+		long[] columns = new long[width];
+		int[] heights = new int[width];
+
+		for (int col = 0; col < width; col++) {
+			columns[col] = board.getColumnMask(col, full);
+			heights[col] = Board.heightOf(columns[col]);
+		}
+
+		int[] sorted = heights.clone();
+		Arrays.sort(sorted);
+
+		int sumHeight = 0;
+		int minHeight = sorted[0];
+		int maxHeight = sorted[width - 1];
 
-		for (int col = 0; col < board.getWidth(); col++) {
-			heights[col] = getColumnHeight(board, col);
+		if (maxHeight + Long.bitCount(full) + cells >= height) {
+			// The piece may not spawn above the stack, or may reach the top row, which is
+			// duplicated when a row below it is removed. Neither case is bounded.
+			return Double.POSITIVE_INFINITY;
 		}
 
-		return heights;
+		// A piece dropped from above lands on top of every column it touches, so it can only
+		// complete a row if that row's empty blocks are all above the top of their columns, and
+		// are no more in number or in span than the blocks of the piece.
+
+		long covered = 0;
+
+		for (int col = 0; col < width; col++) {
+			if (heights[col] > 0) {
+				covered |= ~columns[col] & (-1L >>> (Long.SIZE - heights[col]));
+			}
+		}
+
+		long completable = 0;
+
+		for (int row = minHeight; row < maxHeight + cells && (cells >= width || row < sorted[cells]); row++) {
+			if ((covered & (1L << row)) == 0) {
+				int first = width;
+				int last = -1;
+
+				for (int col = 0; col < width; col++) {
+					if (heights[col] <= row) {
+						first = Math.min(col, first);
+						last = Math.max(col, last);
+					}
+				}
+
+				if (last - first < cells) {
+					completable |= 1L << row;
+				}
+			}
+		}
+
+		int clears = Math.min(Long.bitCount(completable), cells);
+
+		// Clearing a row lowers each column by one, unless it removes the top of a column and
+		// uncovers its holes. Otherwise, a piece lands above every column it touches, so it cannot
+		// fill a hole, and it raises the sum of the column heights by at least its size.
+
+		int minSum = clears == 0 ? cells : 0;
+		int maxLow = 0;
+		int lostHoles = 0;
+		int lostBlockades = 0;
+		int wells = 0;
+
+		for (int col = 0; col < width; col++) {
+			boolean uncovered = heights[col] > 0 && (completable & (1L << (heights[col] - 1))) != 0;
+
+			int holes = Board.holesOf(columns[col]);
+			int blockades = Board.blockadesOf(columns[col]);
+			int drop = clears + (uncovered ? holes : 0);
+
+			sumHeight += heights[col];
+			minSum -= drop;
+			maxLow = Math.max(heights[col] - drop, maxLow);
+			lostHoles += uncovered ? holes : 0;
+			lostBlockades += uncovered ? blockades : Math.min(clears, blockades);
+		}
+
+		// The piece touches at most as many columns as it has blocks, so at least one of that
+		// many plus one lowest columns keeps its height. Only the wells under the piece and beside
+		// it can be filled, unless rows are cleared.
+
+		int minHigh = cells < width ? sorted[cells] : height;
+		int[] depths = new int[width];
+
+		for (int col = 0; col < width; col++) {
+			depths[col] = wellDepth(col, heights);
+			wells += depths[col];
+		}
+
+		int lostWells = 0;
+		int window = 0;
+
+		for (int col = 0; col < width; col++) {
+			window += depths[col] - (col >= cells + 2 ? depths[col - cells - 2] : 0);
+			lostWells = Math.max(window, lostWells);
+		}
+
+		if (clears > 0) {
+			lostWells = wells;
+		}
+
+		int maxSum = cells * (height - minHeight);
+
+		double bound = 0;
+		bound += bound(weights.getWeights()[0], minSum, maxSum);
+		bound += bound(weights.getWeights()[1], maxLow - maxHeight, height - maxHeight);
+		bound += bound(weights.getWeights()[2], (maxLow - minHigh) - (maxHeight - minHeight), height - (maxHeight - minHeight));
+		bound += bound(weights.getWeights()[3], minSum / (double) width, maxSum / (double) width);
+		bound += bound(weights.getWeights()[4], -lostHoles, cells * (height - minHeight));
+		bound += bound(weights.getWeights()[5], -lostWells, clears > 0 ? width * height : (cells + 2) * height);
+		bound += bound(weights.getWeights()[6], -lostBlockades, cells);
+		bound += bound(weights.getWeights()[7], 0, clears);
+
+		return bound;
+	}
+
+	private static double bound(double weight, double min, double max) {
+		return Math.max(weight * min, weight * max);
 	}
 
 	/**
-	 * Gets the row index of the tallest block in a column.
+	 * The features of each column of a board with no full rows, from which the features of the
+	 * board with a piece added are derived.
 	 *
-	 * @param board The board.
-	 * @param col   The column index.
+	 * @author Eric Fritz
+	 */
+	private static class ColumnFeatures
+	{
+		private final Board board;
+		private final int width;
+		private final int height;
+
+		private final long[] columns;
+		private final int[] heights;
+		private final int[] holes;
+		private final int[] blockades;
+		private final int[] depths;
+
+		private int sumHeight = 0;
+		private int maxHeight = 0;
+		private int sumHoles = 0;
+		private int sumWells = 0;
+		private int sumBlockades = 0;
+
+		// A piece only raises the columns it covers, so the highest column is found from the
+		// board and those columns. The lowest column is found from the columns on either side.
+
+		private final int[] prefixMin;
+		private final int[] suffixMin;
+
+		// The columns of each placement are written over a copy of the board's features, and
+		// restored once the placement has been scored.
+
+		private final long[] changed;
+		private final int[] changedHeights;
+
+		public ColumnFeatures(Board board) {
+			this.board = board;
+			this.width = board.getWidth();
+			this.height = board.getHeight();
+
+			columns = new long[width];
+			heights = new int[width];
+			holes = new int[width];
+			blockades = new int[width];
+			depths = new int[width];
+
+			for (int col = 0; col < width; col++) {
+				columns[col] = board.getColumnMask(col);
+				heights[col] = Board.heightOf(columns[col]);
+				holes[col] = Board.holesOf(columns[col]);
+				blockades[col] = Board.blockadesOf(columns[col]);
+
+				sumHeight += heights[col];
+				maxHeight = Math.max(heights[col], maxHeight);
+				sumHoles += holes[col];
+				sumBlockades += blockades[col];
+			}
+
+			for (int col = 0; col < width; col++) {
+				depths[col] = wellDepth(col, heights);
+				sumWells += depths[col];
+			}
+
+			prefixMin = new int[width + 1];
+			suffixMin = new int[width + 1];
+
+			prefixMin[0] = suffixMin[width] = Integer.MAX_VALUE;
+
+			for (int col = 0; col < width; col++) {
+				prefixMin[col + 1] = Math.min(heights[col], prefixMin[col]);
+				suffixMin[width - col - 1] = Math.min(heights[width - col - 1], suffixMin[width - col]);
+			}
+
+			changed = columns.clone();
+			changedHeights = heights.clone();
+		}
+
+		public void extract(Tetromino piece, int xPos, int yPos, double[] features, int offset) {
+			int first = xPos + piece.getMinX();
+			int last = xPos + piece.getMaxX();
+
+			if (first < 0 || last >= width || yPos - piece.getMinY() >= height || yPos - piece.getMaxY() < 0 || completesRow(piece, xPos, yPos)) {
+				ScoringSystem.extract(board, piece, xPos, yPos, features, offset);
+				return;
+			}
+
+			for (int i = 0; i < piece.getSize(); i++) {
+				changed[xPos + piece.getX(i)] |= 1L << (yPos - piece.getY(i));
+			}
+
+			int childSumHeight = sumHeight;
+			int childHoles = sumHoles;
+			int childWells = sumWells;
+			int childBlockades = sumBlockades;
+			int minHeight = Math.min(prefixMin[first], suffixMin[last + 1]);
+			int maxHeight = this.maxHeight;
+
+			for (int col = first; col <= last; col++) {
+				changedHeights[col] = Board.heightOf(changed[col]);
+
+				childSumHeight += changedHeights[col] - heights[col];
+				childHoles += Board.holesOf(changed[col]) - holes[col];
+				childBlockades += Board.blockadesOf(changed[col]) - blockades[col];
+				minHeight = Math.min(changedHeights[col], minHeight);
+				maxHeight = Math.max(changedHeights[col], maxHeight);
+			}
+
+			for (int col = Math.max(first - 1, 0); col <= Math.min(last + 1, width - 1); col++) {
+				childWells += wellDepth(col, changedHeights) - depths[col];
+			}
+
+			for (int col = first; col <= last; col++) {
+				changed[col] = columns[col];
+				changedHeights[col] = heights[col];
+			}
+
+			features(features, offset, width, childSumHeight, minHeight, maxHeight, childHoles, childWells, childBlockades, 0);
+		}
+
+		private boolean completesRow(Tetromino piece, int xPos, int yPos) {
+			long fullRow = -1L >>> (Long.SIZE - width);
+
+			for (int i = 0; i < piece.getSize(); i++) {
+				int row = yPos - piece.getY(i);
+				long mask = board.getRowMask(row);
+
+				for (int j = 0; j < piece.getSize(); j++) {
+					if (yPos - piece.getY(j) == row) {
+						mask |= 1L << (xPos + piece.getX(j));
+					}
+				}
+
+				if (mask == fullRow) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * A set of weights compiled for boards of a single width. The weight of the average height is
+	 * folded into the weight of the sum of the heights, which it is linear in, and the features with
+	 * no weight are skipped entirely, both when extracting features and when scoring them.
 	 *
-	 * @return The height of the column.
+	 * @author Eric Fritz
 	 */
-	private int getColumnHeight(Board board, int col) {
-		int height = board.getHeight() - 1;
+	private static class Scorer
+	{
+		private final Weights weights;
+		private final int width;
+
+		private final int[] features;
+		private final double[] coefficients;
+
+		private final boolean holes;
+		private final boolean wells;
+		private final boolean blockades;
+
+		public Scorer(Weights weights, int width) {
+			this.weights = weights;
+			this.width = width;
 
-		while (height > 0 && board.getShapeAt(height - 1, col) == Shape.NoShape) {
-			height--;
+			double[] w = weights.getWeights().clone();
+			w[0] += w[3] / width;
+			w[3] = 0;
+
+			int count = 0;
+			for (int i = 0; i < FEATURES; i++) {
+				if (w[i] != 0) {
+					count++;
+				}
+			}
+
+			features = new int[count];
+			coefficients = new double[count];
+
+			for (int i = 0, j = 0; i < FEATURES; i++) {
+				if (w[i] != 0) {
+					features[j] = i;
+					coefficients[j] = w[i];
+					j++;
+				}
+			}
+
+			holes = w[4] != 0;
+			wells = w[5] != 0;
+			blockades = w[6] != 0;
 		}
 
-		return height;
+		public double score(double[] features, int offset) {
+			double score = 0;
+
+			for (int i = 0; i < coefficients.length; i++) {
+				score += coefficients[i] * features[offset + this.features[i]];
+			}
+
+			return score;
+		}
 	}
 }
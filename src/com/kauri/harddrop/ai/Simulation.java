@@ -0,0 +1,162 @@
+/*
+ * This file is part of the tetris package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauri.harddrop.ai;
+
+import com.kauri.harddrop.GameContext;
+import com.kauri.harddrop.GameContext.State;
+
+/**
+ * Plays games with an AI as quickly as possible, without a user interface. Each piece is placed
+ * as soon as its move is chosen, rather than animated one command at a time.
+ *
+ * @author Eric Fritz
+ */
+public class Simulation
+{
+	private GameContext context;
+	private AI ai;
+
+	private long maxPieces = 0;
+
+	private long games = 0;
+	private long pieces = 0;
+	private long lines = 0;
+	private long elapsed = 0;
+
+	/**
+	 * Creates a new Simulation.
+	 *
+	 * @param context   The game to play.
+	 * @param evaluator The evaluator which chooses each move.
+	 */
+	public Simulation(GameContext context, MoveEvaluator evaluator) {
+		this.context = context;
+		this.ai = new AI(context, evaluator);
+	}
+
+	public GameContext getContext() {
+		return context;
+	}
+
+	public AI getAI() {
+		return ai;
+	}
+
+	public long getMaxPieces() {
+		return maxPieces;
+	}
+
+	/**
+	 * Sets the number of pieces after which a game is stopped, even if it is not over. A good AI
+	 * may otherwise play a single game indefinitely.
+	 *
+	 * @param maxPieces The maximum number of pieces, or zero for no limit.
+	 */
+	public void setMaxPieces(long maxPieces) {
+		this.maxPieces = maxPieces;
+	}
+
+	/**
+	 * Plays a new game until it is over or the piece limit is reached.
+	 *
+	 * @return The number of lines cleared.
+	 */
+	public long play() {
+		newGame();
+		return resume(maxPieces);
+	}
+
+	/**
+	 * Starts a new game without placing any pieces.
+	 */
+	public void newGame() {
+		context.newGame();
+		games++;
+	}
+
+	/**
+	 * Continues the current game until it is over or the given number of pieces have been placed
+	 * since it started. The game may be continued further by a later call.
+	 *
+	 * @param limit The maximum number of pieces, or zero for no limit.
+	 *
+	 * @return The number of lines cleared since the game started.
+	 */
+	public long resume(long limit) {
+		long start = System.nanoTime();
+		long drops = context.getDrops();
+		long cleared = context.getLines();
+
+		while (context.getState() == State.PLAYING && (limit == 0 || context.getDrops() < limit)) {
+			ai.step();
+			context.execute();
+		}
+
+		pieces += context.getDrops() - drops;
+		lines += context.getLines() - cleared;
+		elapsed += System.nanoTime() - start;
+
+		return context.getLines();
+	}
+
+	/**
+	 * @return <tt>true</tt> if the current game is over.
+	 */
+	public boolean isOver() {
+		return context.getState() != State.PLAYING;
+	}
+
+	/**
+	 * @return The number of games played.
+	 */
+	public long getGames() {
+		return games;
+	}
+
+	/**
+	 * @return The number of pieces placed over all games.
+	 */
+	public long getPieces() {
+		return pieces;
+	}
+
+	/**
+	 * @return The number of lines cleared over all games.
+	 */
+	public long getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return The time spent playing games, in nanoseconds.
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	@Override
+	public String toString() {
+		double seconds = elapsed / 1e9;
+
+		return String.format("games = %d, pieces = %d, lines = %d, games/sec = %.2f, pieces/sec = %.0f", games, pieces, lines, games / seconds, pieces / seconds);
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * This file is part of the tetris package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauri.harddrop.ai;
+
+import com.kauri.harddrop.Board;
+import com.kauri.harddrop.Tetromino;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A transposition table caches the results of a search keyed by the hash of the searched
+ * position. The table has a fixed number of slots and each key maps to exactly one of them, so
+ * inserting an entry may evict another.
+ * <p>
+ * The table is lock-free and can be shared between threads. Each slot is stored in three words:
+ * the score, the move data, and a check word holding the exclusive-or of the key with the other
+ * two. A reader only accepts a slot if the check word matches, so a slot torn by concurrent
+ * writers reads as a miss instead of as a wrong result.
+ *
+ * @author Eric Fritz
+ */
+public class TranspositionTable
+{
+	/**
+	 * Decides whether a new entry may evict the entry already stored in its slot.
+	 */
+	public enum Replacement
+	{
+		/**
+		 * New entries always replace old ones.
+		 */
+		ALWAYS,
+
+		/**
+		 * New entries do not replace entries which were searched to a greater depth.
+		 */
+		DEPTH_PREFERRED
+	}
+
+	private static final long OCCUPIED = 1L << 63;
+
+	private final int mask;
+	private final Replacement replacement;
+
+	private final AtomicLongArray checks;
+	private final AtomicLongArray scores;
+	private final AtomicLongArray data;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Creates a new TranspositionTable.
+	 *
+	 * @param size        The number of slots. This is rounded up to a power of two.
+	 * @param replacement The replacement policy.
+	 */
+	public TranspositionTable(int size, Replacement replacement) {
+		int capacity = Integer.highestOneBit(Math.max(1, size - 1) << 1);
+
+		this.mask = capacity - 1;
+		this.replacement = replacement;
+
+		checks = new AtomicLongArray(capacity);
+		scores = new AtomicLongArray(capacity);
+		data = new AtomicLongArray(capacity);
+	}
+
+	/**
+	 * Computes the key of a board. Boards of different sizes may hold the same cells, and so have
+	 * the same hash, but they are not scored alike.
+	 *
+	 * @param board The board.
+	 *
+	 * @return The key.
+	 */
+	public static long key(Board board) {
+		long z = ((long) board.getWidth() << 32 | board.getHeight()) * 0xD6E8FEB86659FD93L;
+		return board.getHash() ^ z ^ (z >>> 29);
+	}
+
+	/**
+	 * Creates a key for the placement of a piece on a board.
+	 *
+	 * @param hash  The key of the board, from {@link TranspositionTable#key(Board)}.
+	 * @param piece The tetromino.
+	 * @param xPos  The x-position.
+	 * @param yPos  The y-position.
+	 *
+	 * @return The key.
+	 */
+	public static long key(long hash, Tetromino piece, int xPos, int yPos) {
+		long z = (piece.getShape().ordinal() * Tetromino.ROTATIONS + piece.getRotation()) * 0x9E3779B97F4A7C15L;
+		z = (z ^ xPos) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ yPos) * 0x94D049BB133111EBL;
+
+		return hash ^ z ^ (z >>> 31);
+	}
+
+	/**
+	 * @return The number of slots in the table.
+	 */
+	public int getSize() {
+		return mask + 1;
+	}
+
+	/**
+	 * @return The number of lookups which found an entry.
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return The number of lookups which did not find an entry.
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Removes every entry from the table. The hit and miss counts are kept.
+	 */
+	public void clear() {
+		for (int i = 0; i <= mask; i++) {
+			checks.set(i, 0);
+			scores.set(i, 0);
+			data.set(i, 0);
+		}
+	}
+
+	/**
+	 * Retrieves the score stored for a key.
+	 *
+	 * @param key   The key.
+	 * @param depth The depth of the search which produced the score.
+	 *
+	 * @return The score, or {@link Double#NaN} if there is no matching entry.
+	 */
+	public double getScore(long key, int depth) {
+		int slot = slot(key);
+
+		long d = data.get(slot);
+		long s = scores.get(slot);
+
+		if (matches(slot, key, s, d, depth)) {
+			hits.increment();
+			return Double.longBitsToDouble(s);
+		}
+
+		misses.increment();
+		return Double.NaN;
+	}
+
+	/**
+	 * Retrieves the move stored for a key.
+	 *
+	 * @param key   The key.
+	 * @param depth The depth of the search which produced the move.
+	 *
+	 * @return The move, or <tt>null</tt> if there is no matching entry.
+	 */
+	public Move getMove(long key, int depth) {
+		int slot = slot(key);
+
+		long d = data.get(slot);
+		long s = scores.get(slot);
+
+		if (matches(slot, key, s, d, depth)) {
+			hits.increment();
+			return new Move(Double.longBitsToDouble(s), (byte) (d >>> 16), (short) d);
+		}
+
+		misses.increment();
+		return null;
+	}
+
+	/**
+	 * Stores a score for a key.
+	 *
+	 * @param key   The key.
+	 * @param depth The depth of the search which produced the score.
+	 * @param score The score.
+	 */
+	public void putScore(long key, int depth, double score) {
+		put(key, depth, score, 0, 0);
+	}
+
+	/**
+	 * Stores a move for a key.
+	 *
+	 * @param key   The key.
+	 * @param depth The depth of the search which produced the move.
+	 * @param move  The move.
+	 */
+	public void putMove(long key, int depth, Move move) {
+		put(key, depth, move.getScore(), move.getRotationDelta(), move.getMovementDelta());
+	}
+
+	@Override
+	public String toString() {
+		long h = getHits();
+		long m = getMisses();
+
+		return String.format("hits = %d, misses = %d, hit rate = %.1f%%", h, m, h + m == 0 ? 0 : 100.0 * h / (h + m));
+	}
+
+	private void put(long key, int depth, double score, int rotation, int translation) {
+		int slot = slot(key);
+
+		if (replacement == Replacement.DEPTH_PREFERRED) {
+			long d = data.get(slot);
+
+			if ((d & OCCUPIED) != 0 && (int) ((d >>> 32) & 0xFF) > depth) {
+				return;
+			}
+		}
+
+		long s = Double.doubleToRawLongBits(score);
+		long d = OCCUPIED | ((long) (depth & 0xFF) << 32) | ((long) (rotation & 0xFF) << 16) | (translation & 0xFFFF);
+
+		// The check word is written last and cleared first, so that a reader racing with this
+		// write sees either a mismatch or the complete entry.
+
+		checks.set(slot, 0);
+		scores.set(slot, s);
+		data.set(slot, d);
+		checks.set(slot, key ^ s ^ d);
+	}
+
+	private boolean matches(int slot, long key, long s, long d, int depth) {
+		return (d & OCCUPIED) != 0 && (int) ((d >>> 32) & 0xFF) == depth && (checks.get(slot) ^ s ^ d) == key;
+	}
+
+	private int slot(long key) {
+		return (int) (key ^ (key >>> 32)) & mask;
+	}
+}
@@ -21,6 +21,8 @@
 
 package com.kauri.harddrop.ai;
 
+import java.util.Arrays;
+
 /**
  * @author Eric Fritz
  */
@@ -36,6 +38,16 @@ public class Weights
 		return weights;
 	}
 
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof Weights && Arrays.equals(weights, ((Weights) o).weights);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(weights);
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
@@ -0,0 +1,154 @@
+/*
+ * This file is part of the tetris package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kauri.harddrop.ai;
+
+import com.kauri.harddrop.Board;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays the games sent by a {@link Coordinator}, each on a new board without a user interface. The
+ * protocol is described by the coordinator.
+ *
+ * @author Eric Fritz
+ */
+public class Worker
+{
+	/**
+	 * The time between the messages which show the coordinator that the worker is alive, in
+	 * milliseconds.
+	 */
+	public static final int HEARTBEAT = 1000;
+
+	private String host;
+	private int port;
+	private int threads;
+
+	/**
+	 * Creates a new Worker.
+	 *
+	 * @param host    The host of the coordinator.
+	 * @param port    The port of the coordinator.
+	 * @param threads The number of games played at once.
+	 */
+	public Worker(String host, int port, int threads) {
+		this.host = host;
+		this.port = port;
+		this.threads = threads;
+	}
+
+	/**
+	 * Connects to the coordinator and plays the games it sends until it closes the connection.
+	 *
+	 * @throws IOException If the coordinator cannot be reached.
+	 */
+	public void run() throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor();
+
+		try (Socket socket = new Socket(host, port)) {
+			socket.setTcpNoDelay(true);
+
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream())));
+
+			send(out, "HELLO " + threads);
+			heartbeat.scheduleAtFixedRate(() -> send(out, "PING"), HEARTBEAT, HEARTBEAT, TimeUnit.MILLISECONDS);
+
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				String[] parts = line.split(" ");
+
+				if (!parts[0].equals("PLAY")) {
+					continue;
+				}
+
+				if (parts.length < 2) {
+					throw new IOException("Malformed game: " + line);
+				}
+
+				long id;
+
+				try {
+					id = Long.parseLong(parts[1]);
+				} catch (NumberFormatException e) {
+					// A game which cannot be answered must not hold a slot of the coordinator.
+					throw new IOException("Malformed game: " + line, e);
+				}
+
+				int width;
+				long maxPieces;
+				Long seed;
+				double[] weights = new double[ScoringSystem.FEATURES];
+
+				try {
+					if (parts.length != 5 + weights.length) {
+						throw new IllegalArgumentException("Expected " + weights.length + " weights.");
+					}
+
+					width = Integer.parseInt(parts[2]);
+					maxPieces = Long.parseLong(parts[3]);
+					seed = parts[4].equals("-") ? null : Long.parseLong(parts[4]);
+
+					for (int i = 0; i < weights.length; i++) {
+						weights[i] = Double.parseDouble(parts[i + 5]);
+					}
+
+					if (width < 1 || width > Board.MAX_WIDTH || width * 2 > Board.MAX_HEIGHT || maxPieces < 0) {
+						throw new IllegalArgumentException("Invalid width or piece limit.");
+					}
+				} catch (IllegalArgumentException e) {
+					send(out, "ERROR " + id + " " + e.getMessage());
+					continue;
+				}
+
+				executor.execute(() -> {
+					try {
+						long[] result = Evolution.play(new Weights(weights), seed, width, maxPieces);
+						send(out, "RESULT " + id + " " + result[0] + " " + result[1]);
+					} catch (RuntimeException e) {
+						send(out, "ERROR " + id + " " + e);
+					}
+				});
+			}
+		} finally {
+			heartbeat.shutdownNow();
+			executor.shutdownNow();
+		}
+	}
+
+	private static void send(PrintWriter out, String line) {
+		synchronized (out) {
+			out.println(line);
+			out.flush();
+		}
+	}
+}
@@ -21,11 +21,9 @@
 
 package com.kauri.harddrop.command;
 
+import com.kauri.harddrop.Board;
 import com.kauri.harddrop.GameContext;
 import com.kauri.harddrop.Shape;
-import java.util.Map.Entry;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 /**
  * @author efritz
@@ -35,7 +33,8 @@ public class ClearCommand implements Command
 	private GameContext context;
 	private long lines;
 	private long score;
-	private SortedMap<Integer, Shape[]> map = new TreeMap<>();
+	private long rows;
+	private Shape[][] cleared;
 
 	public ClearCommand(GameContext context) {
 		this.context = context;
@@ -43,25 +42,22 @@ public class ClearCommand implements Command
 
 	@Override
 	public void execute() {
-		for (int row = context.getBoard().getHeight() - 1; row >= 0; row--) {
-			if (context.getBoard().isRowFull(row)) {
-				map.put(row, context.getBoard().getRow(row));
-				context.getBoard().removeRow(row);
-			}
-		}
+		Board board = context.getBoard();
+
+		rows = board.getFullRows();
+		cleared = board.getRows(rows);
+		board.removeRows(rows);
 
 		lines = context.getLines();
 		score = context.getScore();
 
-		context.setLines(lines + map.size());
-		context.setScore(score + 40 * (long) Math.pow(3, map.size() - 1));
+		context.setLines(lines + cleared.length);
+		context.setScore(score + 40 * (long) Math.pow(3, cleared.length - 1));
 	}
 
 	@Override
 	public void unexecute() {
-		for (Entry<Integer, Shape[]> e : map.entrySet()) {
-			context.getBoard().addRow(e.getKey(), e.getValue());
-		}
+		context.getBoard().addRows(rows, cleared);
 
 		context.setLines(lines);
 		context.setScore(score);
@@ -0,0 +1,98 @@
+/*
+ * This file is part of the tetris package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauri.harddrop.command;
+
+import com.kauri.harddrop.GameContext;
+import com.kauri.harddrop.Tetromino;
+
+/**
+ * Rotates and moves the current piece to its final column, then drops it. This has the effect of
+ * the individual rotation, movement, and drop commands in a single command. Each rotation and each
+ * single-column step is checked as those commands would check it, so a rotation or step which is
+ * blocked is skipped, and the piece is dropped from wherever the remaining steps leave it.
+ *
+ * @author Eric Fritz
+ */
+public class PlaceCommand extends MovementCommand
+{
+	private GameContext context;
+	private int rotations;
+	private int translation;
+
+	private int x;
+	private int y;
+	private Tetromino current;
+	private boolean success = false;
+	private Command subcommand;
+
+	/**
+	 * Creates a new PlaceCommand.
+	 *
+	 * @param context     The game context.
+	 * @param rotations   The number of clockwise rotations.
+	 * @param translation The number of columns to move, negative to the left.
+	 */
+	public PlaceCommand(GameContext context, int rotations, int translation) {
+		super(context);
+		this.context = context;
+		this.rotations = rotations;
+		this.translation = translation;
+	}
+
+	@Override
+	public void execute() {
+		x = context.getX();
+		y = context.getY();
+		current = context.getCurrent();
+
+		Tetromino piece = current;
+
+		for (int i = 0; i < rotations; i++) {
+			if (context.getBoard().canMove(Tetromino.rotateClockwise(piece), x, y)) {
+				piece = Tetromino.rotateClockwise(piece);
+			}
+		}
+
+		int target = x;
+		int step = Integer.signum(translation);
+
+		for (int i = 0; i != translation; i += step) {
+			if (context.getBoard().canMove(piece, target + step, y)) {
+				target += step;
+			}
+		}
+
+		success = tryMove(piece, target, y);
+
+		subcommand = new HardDropCommand(context);
+		subcommand.execute();
+	}
+
+	@Override
+	public void unexecute() {
+		subcommand.unexecute();
+
+		if (success) {
+			tryMove(current, x, y);
+		}
+	}
+}
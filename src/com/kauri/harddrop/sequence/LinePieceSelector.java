@@ -23,6 +23,8 @@ package com.kauri.harddrop.sequence;
 
 import com.kauri.harddrop.Shape;
 import com.kauri.harddrop.Tetromino;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author Eric Fritz
@@ -33,4 +35,9 @@ public class LinePieceSelector implements PieceSelector
 	public Tetromino getNextPiece() {
 		return Tetromino.tetrominoes.get(Shape.I);
 	}
+
+	@Override
+	public List<Tetromino> getCandidates() {
+		return Collections.singletonList(Tetromino.tetrominoes.get(Shape.I));
+	}
 }
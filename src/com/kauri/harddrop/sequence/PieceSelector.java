@@ -22,6 +22,8 @@
 package com.kauri.harddrop.sequence;
 
 import com.kauri.harddrop.Tetromino;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Eric Fritz
@@ -29,4 +31,26 @@ import com.kauri.harddrop.Tetromino;
 public interface PieceSelector
 {
 	abstract Tetromino getNextPiece();
+
+	/**
+	 * Retrieves the pieces which the next call to {@link PieceSelector#getNextPiece()} may return.
+	 * A piece which appears more than once in the list is proportionally more likely. By default,
+	 * every tetromino is equally likely.
+	 *
+	 * @return A list of candidate pieces.
+	 */
+	default List<Tetromino> getCandidates() {
+		return new ArrayList<>(Tetromino.tetrominoes.values());
+	}
+
+	/**
+	 * Determines if the pieces returned depend on the state of the game when they are selected.
+	 * The pieces of such a selector should not be drawn before they are needed, as they would be
+	 * chosen against a game which has not yet reached the state they are meant for.
+	 *
+	 * @return <tt>true</tt> if the selector adapts to the game.
+	 */
+	default boolean isAdaptive() {
+		return false;
+	}
 }
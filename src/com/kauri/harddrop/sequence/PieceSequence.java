@@ -33,6 +33,7 @@ public class PieceSequence
 	private int current = -1;
 	private int preview = +0;
 	private List<Tetromino> pieces = new ArrayList<>();
+	private List<List<Tetromino>> candidates = new ArrayList<>();
 
 	private PieceSelector selector;
 
@@ -45,6 +46,7 @@ public class PieceSequence
 		preview = +0;
 
 		pieces.clear();
+		candidates.clear();
 	}
 
 	public void advance() {
@@ -52,7 +54,7 @@ public class PieceSequence
 		preview++;
 
 		while (pieces.size() <= preview) {
-			pieces.add(selector.getNextPiece());
+			draw();
 		}
 	}
 
@@ -68,4 +70,69 @@ public class PieceSequence
 	public Tetromino peekPreview() {
 		return pieces.get(preview);
 	}
+
+	/**
+	 * Retrieves the pieces which may follow the preview piece, as described by
+	 * {@link PieceSequence#peekCandidates(int)}.
+	 *
+	 * @return A list of candidate pieces.
+	 */
+	public List<Tetromino> peekCandidates() {
+		return peekCandidates(2);
+	}
+
+	/**
+	 * Retrieves the pieces which may appear further along in the sequence, weighted as described
+	 * by {@link PieceSelector#getCandidates()}. The candidates of a piece which has already been
+	 * drawn from the selector are those the selector offered just before drawing it, so they do
+	 * not reveal the piece. If a piece before the given one has not yet been drawn, the state of
+	 * the selector does not describe it, and every tetromino is considered equally likely.
+	 *
+	 * @param offset The number of pieces after the current piece.
+	 *
+	 * @return A list of candidate pieces.
+	 */
+	public List<Tetromino> peekCandidates(int offset) {
+		int index = current + offset;
+
+		if (index < candidates.size()) {
+			return new ArrayList<>(candidates.get(index));
+		}
+
+		if (index == pieces.size()) {
+			return selector.getCandidates();
+		}
+
+		return new ArrayList<>(Tetromino.tetrominoes.values());
+	}
+
+	/**
+	 * @return <tt>true</tt> if the pieces after the preview should not be peeked at, as described
+	 * by {@link PieceSelector#isAdaptive()}.
+	 */
+	public boolean isAdaptive() {
+		return selector.isAdaptive();
+	}
+
+	/**
+	 * Retrieves a piece further along in the sequence. Pieces which have not yet been selected are
+	 * drawn from the selector and buffered, so the sequence will produce the same pieces when it
+	 * is advanced.
+	 *
+	 * @param offset The number of pieces after the current piece.
+	 *
+	 * @return The piece.
+	 */
+	public Tetromino peek(int offset) {
+		while (pieces.size() <= current + offset) {
+			draw();
+		}
+
+		return pieces.get(current + offset);
+	}
+
+	private void draw() {
+		candidates.add(selector.getCandidates());
+		pieces.add(selector.getNextPiece());
+	}
 }
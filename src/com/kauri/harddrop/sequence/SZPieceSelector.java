@@ -23,6 +23,8 @@ package com.kauri.harddrop.sequence;
 
 import com.kauri.harddrop.Shape;
 import com.kauri.harddrop.Tetromino;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author Eric Fritz
@@ -35,4 +37,9 @@ public class SZPieceSelector implements PieceSelector
 	public Tetromino getNextPiece() {
 		return Tetromino.tetrominoes.get(counter++ % 2 == 0 ? Shape.S : Shape.Z);
 	}
+
+	@Override
+	public List<Tetromino> getCandidates() {
+		return Collections.singletonList(Tetromino.tetrominoes.get(counter % 2 == 0 ? Shape.S : Shape.Z));
+	}
 }
@@ -22,6 +22,7 @@
 package com.kauri.harddrop.sequence;
 
 import com.kauri.harddrop.Tetromino;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -52,4 +53,17 @@ public class ShufflePieceSelector implements PieceSelector
 
 		return bag.remove(0);
 	}
+
+	/**
+	 * Retrieves the pieces remaining in the current bag. If the bag is empty, a new bag will be
+	 * filled and any tetromino is equally likely.
+	 */
+	@Override
+	public List<Tetromino> getCandidates() {
+		if (bag.size() == 0) {
+			return PieceSelector.super.getCandidates();
+		}
+
+		return new ArrayList<>(bag);
+	}
 }
@@ -58,4 +58,9 @@ public class WorstPieceSelector implements PieceSelector
 
 		return piece;
 	}
+
+	@Override
+	public boolean isAdaptive() {
+		return true;
+	}
 }